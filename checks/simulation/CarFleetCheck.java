@@ -0,0 +1,91 @@
+package simulation;
+
+import interfaces.GearTypes;
+
+import java.util.Random;
+
+/**
+ * Fails unless CarFleet steps its cars exactly like CarPhysics does. Both run
+ * CarPhysics' static model, so this covers what is not shared: the state each
+ * keeps and how gear changes, brake presses and brake pressures reach it.
+ * CARS cars are driven through STEPS steps both ways with random inputs, and
+ * every car's state must match bit for bit after every step.
+ *
+ * Run by "gradle check" (and so "gradle build").
+ */
+public class CarFleetCheck
+{
+    private static final int CARS = 5000;
+    private static final int STEPS = 3000;
+    private static final double STEP_SECONDS = 1.0 / 60;
+    private static final GearTypes[] GEARS = GearTypes.values();
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(1460);
+        CarPhysics[] cars = new CarPhysics[CARS];
+        CarFleet fleet = new CarFleet(CARS);
+        for (int i = 0; i < CARS; ++i)
+        {
+            GearTypes gear = GEARS[random.nextInt(GEARS.length)];
+            double speed = (random.nextDouble() * 2 - 1) * 60;
+            cars[i] = new CarPhysics();
+            cars[i].start(speed, gear);
+            fleet.start(i, speed, gear);
+        }
+        for (int step = 0; step < STEPS; ++step)
+        {
+            for (int i = 0; i < CARS; ++i)
+            {
+                // Each input changes every few seconds on average
+                if (random.nextInt(300) == 0)
+                {
+                    GearTypes gear = GEARS[random.nextInt(GEARS.length)];
+                    cars[i].setGear(gear);
+                    fleet.setGear(i, gear);
+                }
+                if (random.nextInt(200) == 0)
+                {
+                    if (random.nextBoolean())
+                    {
+                        cars[i].activateBrake();
+                        fleet.activateBrake(i);
+                    }
+                    else
+                    {
+                        cars[i].deactivateBrake();
+                        fleet.deactivateBrake(i);
+                    }
+                }
+                if (random.nextInt(30) == 0)
+                {
+                    double brakePercentage = random.nextDouble() * 100;
+                    cars[i].setBrakePercentage(brakePercentage);
+                    fleet.setBrakePercentage(i, brakePercentage);
+                }
+                cars[i].step(STEP_SECONDS);
+            }
+            fleet.step(STEP_SECONDS);
+            for (int i = 0; i < CARS; ++i) _compare(cars[i], fleet, i, step + 1);
+        }
+        System.out.println("CarFleetCheck: " + CARS + " cars matched CarPhysics over " + STEPS + " steps");
+    }
+
+    private static void _compare(CarPhysics car, CarFleet fleet, int i, int step)
+    {
+        if (_same(car.getSpeed(), fleet.getSpeed(i)) && _same(car.getJerk(), fleet.getJerk(i)) &&
+                _same(car.getBrakePercentage(), fleet.getBrakePercentage(i)) &&
+                car.isTractionLost() == fleet.isTractionLost(i) && car.isActive() == fleet.isActive(i))
+        {
+            return;
+        }
+        throw new IllegalStateException(String.format("CarFleet car %d differs from CarPhysics after step %d: " +
+                "speed %s vs %s, jerk %s vs %s", i, step, car.getSpeed(), fleet.getSpeed(i), car.getJerk(),
+                fleet.getJerk(i)));
+    }
+
+    private static boolean _same(double a, double b)
+    {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+}
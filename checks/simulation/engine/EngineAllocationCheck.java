@@ -0,0 +1,37 @@
+package simulation.engine;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Fails unless a steady-state step of a headless engine running the whole
+ * simulation (car, EHB and every pulse entity) allocates nothing. It takes
+ * WARMUP_STEPS steps so everything is compiled and every buffer has grown, then
+ * counts the bytes this thread allocates over CHECKED_STEPS more.
+ *
+ * Run by "gradle check" (and so "gradle build").
+ */
+public class EngineAllocationCheck
+{
+    private static final int WARMUP_STEPS = 200_000;
+    private static final int CHECKED_STEPS = 100_000;
+
+    public static void main(String[] args)
+    {
+        Engine engine = Engine.initHeadless(args);
+        for (int i = 0; i < WARMUP_STEPS; ++i) engine.step();
+        ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CHECKED_STEPS; ++i) engine.step();
+        // Reading the counter allocates nothing itself
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        if (allocated > 0)
+        {
+            throw new IllegalStateException(String.format("An engine step allocates %.2f bytes, expected none",
+                    allocated / (double)CHECKED_STEPS));
+        }
+        System.out.println("EngineAllocationCheck: " + CHECKED_STEPS + " steps allocated nothing");
+    }
+}
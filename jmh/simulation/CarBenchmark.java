@@ -0,0 +1,44 @@
+package simulation;
+
+import interfaces.GearTypes;
+import org.openjdk.jmh.annotations.*;
+import simulation.engine.BenchmarkSupport;
+import simulation.engine.Engine;
+import simulation.engine.Message;
+import simulation.engine.Singleton;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single physics step of the car while cruising in drive, including
+ * dispatching the speed message it sends every step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarBenchmark {
+    private Car _car;
+    private double _deltaSeconds;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Engine.initHeadless(new String[0]);
+        _deltaSeconds = 1.0 / Engine.getConsoleVariables().find(Singleton.ENG_PHYSICS_HZ).getcvarAsFloat();
+        _car = new Car();
+        Engine.getMessagePump().sendMessage(new Message(SimGlobals.GEAR_CHANGE, GearTypes.DRIVE));
+        Engine.getMessagePump().sendMessage(new Message(SimGlobals.START_SIM));
+        BenchmarkSupport.dispatchMessages();
+    }
+
+    @Benchmark
+    public void step()
+    {
+        _car.pulse(_deltaSeconds);
+        // Standing in for the engine's loop, which would otherwise dispatch these
+        BenchmarkSupport.dispatchMessages();
+    }
+}
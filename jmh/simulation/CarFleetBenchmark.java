@@ -0,0 +1,56 @@
+package simulation;
+
+import interfaces.GearTypes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One physics step for a whole fleet of cars, stored either as one CarPhysics
+ * object per car or as a CarFleet (one primitive array per field). Cars cruise
+ * in drive or reverse at random speeds so every step runs the full model and
+ * the fleet stays in the same state however long the benchmark runs. That
+ * both give the same results is checked by CarFleetCheck on every build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarFleetBenchmark {
+    @Param({"10000", "100000"})
+    public int numCars;
+
+    private CarPhysics[] _cars;
+    private CarFleet _fleet;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Random random = new Random(460);
+        _cars = new CarPhysics[numCars];
+        _fleet = new CarFleet(numCars);
+        for (int i = 0; i < numCars; ++i)
+        {
+            GearTypes gear = random.nextBoolean() ? GearTypes.DRIVE : GearTypes.REVERSE;
+            double speed = (5 + random.nextDouble() * 55) * (gear == GearTypes.REVERSE ? -1 : 1);
+            _cars[i] = new CarPhysics();
+            _cars[i].start(speed, gear);
+            _fleet.start(i, speed, gear);
+        }
+    }
+
+    @Benchmark
+    public void objectPerCar()
+    {
+        for (CarPhysics car : _cars) car.step(1.0 / 60);
+    }
+
+    @Benchmark
+    public void structOfArrays()
+    {
+        _fleet.step(1.0 / 60);
+    }
+}
@@ -0,0 +1,53 @@
+package simulation;
+
+import org.openjdk.jmh.annotations.*;
+import simulation.engine.Engine;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time it takes to export an hour of stats captured at 60 steps per second
+ * (216000 rows) from the moment the Export button is pressed until the files
+ * are closed, with and without the CSV file. Only taking the snapshot happens
+ * on the engine thread - the rest is done on the exporter thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionExporterBenchmark {
+    @Param({"false", "true"})
+    public boolean withCsv;
+
+    private StatCollector _statCollector;
+    private String _path;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        Engine engine = Engine.initHeadless(new String[0]);
+        _statCollector = new StatCollector();
+        for (int i = 0; i < 60 * 60 * 60; ++i) engine.pulse(1.0 / 60);
+        File file = File.createTempFile("session", "");
+        file.deleteOnExit();
+        _path = file.getPath();
+        int rows = _statCollector.export(_path, false).get();
+        if (rows != 60 * 60 * 60) throw new IllegalStateException("Captured " + rows + " steps rather than an hour");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        new File(_path + ".stats").delete();
+        new File(_path + ".csv").delete();
+    }
+
+    @Benchmark
+    public int export() throws Exception
+    {
+        return _statCollector.export(_path, withCsv).get();
+    }
+}
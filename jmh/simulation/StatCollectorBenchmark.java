@@ -0,0 +1,67 @@
+package simulation;
+
+import javafx.scene.chart.XYChart;
+import org.openjdk.jmh.annotations.*;
+import simulation.engine.Engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an hour of collected stats into a chart series from scratch
+ * (buildSeries, when the stats popup is opened or its graph changes), of
+ * bringing an existing series up to date after another step (refreshSeries,
+ * what the open popup does a few times a second), and of a whole engine
+ * step while the stats are being captured (captureStep), which should not
+ * allocate anything apart from the stats' storage growing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatCollectorBenchmark {
+    @Param({"SPEED_VS_TIME", "PRESSURE_VS_TIME"})
+    public GraphTypes graphType;
+
+    @Param({"1.0", "10.0"})
+    public double deltaX;
+
+    private StatCollector _statCollector;
+    private XYChart.Series<Number, Number> _series = new XYChart.Series<>();
+    private Engine _engine;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        _engine = Engine.initHeadless(new String[0]);
+        _statCollector = new StatCollector();
+        // An hour of one second steps - far more windows than a graph can show,
+        // so every graph has been downsampled
+        for (int i = 0; i < 3600; ++i) _engine.pulse(1.0);
+        _statCollector.updateSeries(_series, deltaX, graphType);
+    }
+
+    @Benchmark
+    public Object buildSeries()
+    {
+        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        _statCollector.updateSeries(series, deltaX, graphType);
+        return series;
+    }
+
+    @Benchmark
+    public Object refreshSeries()
+    {
+        _engine.pulse(1.0);
+        _statCollector.updateSeries(_series, deltaX, graphType);
+        return _series;
+    }
+
+    @Benchmark
+    public long captureStep()
+    {
+        _engine.pulse(1.0 / 60);
+        return _engine.getNumSteps();
+    }
+}
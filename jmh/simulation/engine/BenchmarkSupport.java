@@ -0,0 +1,18 @@
+package simulation.engine;
+
+/**
+ * Gives benchmarks outside of the engine package access to the parts of the
+ * engine that are normally only driven by the engine's own loop.
+ */
+public final class BenchmarkSupport {
+    private BenchmarkSupport() {}
+
+    /**
+     * Dispatches everything waiting in the engine's message pump - benchmarks
+     * stand in for the engine's loop, so this is safe to call from them
+     */
+    public static void dispatchMessages()
+    {
+        Engine.getMessagePump().dispatchMessages();
+    }
+}
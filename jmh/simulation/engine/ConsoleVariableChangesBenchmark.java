@@ -0,0 +1,46 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the engine's once per step check for edited console variables when
+ * a lot of them are registered (such as a large set of tuning variables) but
+ * few of them change. It should depend on how many changed rather than on how
+ * many are registered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsoleVariableChangesBenchmark {
+    @Param({"20", "500"})
+    public int numCvars;
+
+    private ConsoleVariables _cvars;
+    private ConsoleVariable _edited;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        _cvars = new ConsoleVariables();
+        for (int i = 0; i < numCvars; ++i) _cvars.registerVariable(new ConsoleVariable("tuning_" + i, "5"));
+        _edited = _cvars.find("tuning_0");
+    }
+
+    @Benchmark
+    public int nothingChanged()
+    {
+        return _cvars.getVariableChangesSinceLastCall().size();
+    }
+
+    @Benchmark
+    public int oneChanged()
+    {
+        _edited.setValue("5");
+        return _cvars.getVariableChangesSinceLastCall().size();
+    }
+}
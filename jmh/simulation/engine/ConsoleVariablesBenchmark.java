@@ -0,0 +1,68 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of looking up console variables by name compared to reading the typed
+ * handles (see CvarHandle) the engine and renderer hold on to instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsoleVariablesBenchmark {
+    private ConsoleVariables _cvars;
+    private IntCvar _worldWidth;
+    private BoolCvar _calculateMovement;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        _cvars = new ConsoleVariables();
+        _cvars.loadConfigFile("src/resources/engine.cfg");
+        _cvars.registerVariable(new ConsoleVariable(Singleton.WORLD_WIDTH, "1000", "0"));
+        _cvars.registerVariable(new ConsoleVariable(Singleton.CALCULATE_MOVEMENT, "true", "true"));
+        _worldWidth = _cvars.findInt(Singleton.WORLD_WIDTH);
+        _calculateMovement = _cvars.findBool(Singleton.CALCULATE_MOVEMENT);
+    }
+
+    @Benchmark
+    public int findAsInt()
+    {
+        return _cvars.find(Singleton.WORLD_WIDTH).getcvarAsInt();
+    }
+
+    @Benchmark
+    public String findValue()
+    {
+        return _cvars.find(Singleton.CALCULATE_MOVEMENT).getcvarValue();
+    }
+
+    @Benchmark
+    public boolean findAndParseBool()
+    {
+        return Boolean.parseBoolean(_cvars.find(Singleton.CALCULATE_MOVEMENT).getcvarValue());
+    }
+
+    @Benchmark
+    public int intHandle()
+    {
+        return _worldWidth.get();
+    }
+
+    @Benchmark
+    public boolean boolHandle()
+    {
+        return _calculateMovement.get();
+    }
+
+    @Benchmark
+    public ConsoleVariable findMissing()
+    {
+        return _cvars.find("not_a_cvar");
+    }
+}
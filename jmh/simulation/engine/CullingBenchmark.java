@@ -0,0 +1,86 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding what is on screen each frame. The same 100 entities are
+ * always in front of the camera while the rest are spread along a long world,
+ * so determineVisibleEntities should cost about the same no matter how many
+ * entities there are. boundsTestEveryEntity is the old approach of testing
+ * every entity in the world, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CullingBenchmark {
+    private static final int WORLD_WIDTH = 1_000_000;
+    private static final int SCREEN_WIDTH = 1000;
+    private static final int SCREEN_HEIGHT = 675;
+    private static final int NUM_ON_SCREEN = 100;
+
+    @Param({"5000", "50000"})
+    public int numEntities;
+
+    private Renderer _renderer;
+    private ArrayList<RenderEntity> _entities = new ArrayList<>();
+
+    private static class BenchEntity extends RenderEntity
+    {
+        @Override
+        public void pulse(double deltaSeconds) {}
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Engine.initHeadless(new String[] { "+world_start_x=0", "+world_width=" + WORLD_WIDTH });
+        _renderer = new Renderer();
+        Random random = new Random(460);
+        for (int i = 0; i < numEntities; ++i)
+        {
+            BenchEntity entity = new BenchEntity();
+            double x = i < NUM_ON_SCREEN ? random.nextInt(SCREEN_WIDTH) : SCREEN_WIDTH * 2 + random.nextInt(WORLD_WIDTH - SCREEN_WIDTH * 3);
+            entity.setLocationXYDepth(x, random.nextInt(SCREEN_HEIGHT), random.nextInt(10) - 2);
+            entity.setWidthHeight(50, 50);
+            _renderer.handleMessage(new Message(Singleton.ADD_RENDER_ENTITY, entity));
+            _entities.add(entity);
+        }
+        _renderer.determineVisibleEntities(1.0, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        if (_renderer.getVisibleEntities().size() != NUM_ON_SCREEN)
+        {
+            throw new IllegalStateException("Expected " + NUM_ON_SCREEN + " visible entities, found " +
+                    _renderer.getVisibleEntities().size());
+        }
+    }
+
+    @Benchmark
+    public int determineVisibleEntities()
+    {
+        _renderer.determineVisibleEntities(1.0, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        return _renderer.getVisibleEntities().size();
+    }
+
+    @Benchmark
+    public int boundsTestEveryEntity()
+    {
+        int numVisible = 0;
+        for (int i = 0; i < _entities.size(); ++i)
+        {
+            RenderEntity entity = _entities.get(i);
+            double screenX = entity.getTranslationVec().x();
+            double screenY = entity.getTranslationVec().y();
+            boolean isVisible = !(screenX + entity.getWidth() < 0 || screenX > SCREEN_WIDTH ||
+                    screenY + entity.getHeight() < 0 || screenY > SCREEN_HEIGHT);
+            entity.setScreenVisibility(isVisible);
+            if (isVisible) ++numVisible;
+        }
+        return numVisible;
+    }
+}
@@ -0,0 +1,34 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one fixed step of a headless engine running the whole simulation
+ * (car, EHB and every pulse entity). A step must not allocate anything - that
+ * is checked by EngineAllocationCheck on every build, and the gc profiler
+ * shows it here too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineStepBenchmark {
+    private Engine _engine;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        _engine = Engine.initHeadless(new String[0]);
+    }
+
+    @Benchmark
+    public long step()
+    {
+        _engine.step();
+        return _engine.getNumSteps();
+    }
+}
@@ -0,0 +1,54 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of sending a batch of messages and dispatching them to a given number
+ * of handlers. Scores are per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePumpBenchmark {
+    private static final int BATCH_SIZE = 1000;
+    private static final String MESSAGE_NAME = "bench_message";
+
+    @Param({"1", "8", "64"})
+    public int numHandlers;
+
+    private MessagePump _pump;
+    private int _messageId;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole)
+    {
+        _pump = new MessagePump();
+        _messageId = _pump.registerMessage(new Message(MESSAGE_NAME));
+        for (int i = 0; i < numHandlers; ++i)
+        {
+            _pump.signalInterest(_messageId, (message) -> blackhole.consume(message.getDoubleData()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sendAndDispatchById()
+    {
+        for (int i = 0; i < BATCH_SIZE; ++i) _pump.sendMessage(_messageId, i);
+        _pump.dispatchMessages();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sendAndDispatchByName()
+    {
+        for (int i = 0; i < BATCH_SIZE; ++i) _pump.sendMessage(MESSAGE_NAME, i);
+        _pump.dispatchMessages();
+    }
+}
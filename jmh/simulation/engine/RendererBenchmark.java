@@ -0,0 +1,84 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the renderer's per-step movement pass and its per-frame draw order
+ * pass over large numbers of entities. Every tenth entity is attached to the
+ * one before it so the actor graph walk is exercised as well.
+ *
+ * determineDrawOrder is a frame where no depths changed and
+ * determineDrawOrderAfterDepthChanges is one where 1% of the entities moved to
+ * a different depth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+    @Param({"10000", "100000"})
+    public int numEntities;
+
+    private Renderer _renderer;
+    private BenchEntity[] _entities;
+    private int _nextChanged = 0;
+
+    // Nothing to do each pulse - the renderer does all of the moving
+    private static class BenchEntity extends RenderEntity
+    {
+        @Override
+        public void pulse(double deltaSeconds) {}
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Engine.initHeadless(new String[0]); // The renderer reads the world bounds from the cvars
+        _renderer = new Renderer();
+        Random random = new Random(460);
+        BenchEntity previous = null;
+        _entities = new BenchEntity[numEntities];
+        for (int i = 0; i < numEntities; ++i)
+        {
+            BenchEntity entity = new BenchEntity();
+            _entities[i] = entity;
+            entity.setLocationXYDepth(random.nextInt(1000), random.nextInt(1000), random.nextInt(10) - 2);
+            entity.setSpeedXY(random.nextDouble() * 50 - 25, 0);
+            entity.setWidthHeight(100, 100);
+            if (previous != null && i % 10 == 0) previous.attachActor(entity);
+            _renderer.handleMessage(new Message(Singleton.ADD_RENDER_ENTITY, entity));
+            previous = entity;
+        }
+        _renderer.determineDrawOrder();
+    }
+
+    @Benchmark
+    public void updateEntities()
+    {
+        _renderer.updateEntities(1.0 / 60);
+    }
+
+    @Benchmark
+    public void determineDrawOrder()
+    {
+        _renderer.determineDrawOrder();
+    }
+
+    @Benchmark
+    public void determineDrawOrderAfterDepthChanges()
+    {
+        for (int i = 0; i < numEntities / 100; ++i)
+        {
+            BenchEntity entity = _entities[_nextChanged];
+            _nextChanged = (_nextChanged + 97) % numEntities;
+            double depth = entity.getDepth() >= 7 ? -2 : entity.getDepth() + 1;
+            entity.setLocationXYDepth(entity.getLocationX(), entity.getLocationY(), depth);
+        }
+        _renderer.determineDrawOrder();
+    }
+}
@@ -0,0 +1,67 @@
+package simulation.engine;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a single message: a speed-like double which changes every
+ * step, a message without data and a message carrying a String.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionRecorderBenchmark {
+    private File _file;
+    private SessionRecorder _recorder;
+    private Message _doubleMessage;
+    private Message _emptyMessage;
+    private Message _stringMessage;
+    private double _speed = 30.0;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException
+    {
+        _file = File.createTempFile("session", ".rec");
+        _recorder = new SessionRecorder(_file.getPath(), 64L * 1024 * 1024);
+        _recorder.beginSession();
+        _doubleMessage = new Message("speed");
+        _doubleMessage.setMessageId(0);
+        _emptyMessage = new Message("start");
+        _emptyMessage.setMessageId(1);
+        _stringMessage = new Message("texture", "resources/img/car/car1.png");
+        _stringMessage.setMessageId(2);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        _recorder.close();
+        _file.delete();
+    }
+
+    @Benchmark
+    public void recordDouble()
+    {
+        _speed -= 0.0123;
+        _doubleMessage.setDoubleData(_speed);
+        _recorder.record(_doubleMessage);
+    }
+
+    @Benchmark
+    public void recordEmpty()
+    {
+        _recorder.record(_emptyMessage);
+    }
+
+    @Benchmark
+    public void recordString()
+    {
+        _recorder.record(_stringMessage);
+    }
+}
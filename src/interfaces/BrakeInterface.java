@@ -2,7 +2,6 @@ package interfaces;
 
 import simulation.SimGlobals;
 import simulation.engine.Engine;
-import simulation.engine.Message;
 
 /**
  * The brake interface represents the only means by which
@@ -26,6 +25,6 @@ public class BrakeInterface
     // Constrain the pressure if needed
     if (pressure < 0.0) pressure = 0.0;
     else if (pressure > 100.0) pressure = 100.0;
-    Engine.getMessagePump().sendMessage(new Message(SimGlobals.SET_PRESSURE, pressure));
+    Engine.getMessagePump().sendMessage(SimGlobals.SET_PRESSURE, pressure);
   }
 }
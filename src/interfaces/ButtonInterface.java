@@ -25,7 +25,7 @@ import simulation.engine.MessageHandler;
  */
 public class ButtonInterface
 {
-    private static boolean _isDown;
+    private static volatile boolean _isDown; // Written on the engine thread, read from any thread
 
     {
         Helper helper = new Helper();
@@ -50,6 +50,7 @@ public class ButtonInterface
      */
     static public void play(ButtonSoundTypes s)
     {
+        if (Engine.isHeadless()) return; // No audio system without JavaFX
         URL url = ButtonInterface.class.getResource(s.toString());
         AudioClip sound = new AudioClip(url.toExternalForm());
         sound.play(1, 0, 1, 0, 1);
@@ -12,7 +12,7 @@ import simulation.engine.MessageHandler;
  */
 public class GearInterface
 {
-    private static GearTypes _currentGear;
+    private static volatile GearTypes _currentGear; // Written on the engine thread, read from any thread
 
     {
         Engine.getMessagePump().signalInterest(SimGlobals.GEAR_CHANGE,
@@ -9,11 +9,11 @@ import simulation.engine.Engine;
  */
 public class SpeedInterface
 {
-  private static double _speed = 0;
+  private static volatile double _speed = 0; // Written on the engine thread, read from any thread
 
   {
     Engine.getMessagePump().signalInterest(SimGlobals.SPEED,
-            (message) -> _speed = (Double)message.getMessageData());
+            (message) -> _speed = message.getDoubleData());
   }
 
   /**
@@ -10,14 +10,15 @@ import simulation.engine.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 
 /**
  * This is the only part of the application that the simulation.engine
  * directly and explicitly knows about. It only guarantees
- * two things: it will call init() at the start and shutdown()
- * at the end. If you need anything else you must set it up
- * with the simulation.engine
+ * three things: it will call init() at the start, reset() when
+ * a warm reset is asked for and shutdown() at the end. If you
+ * need anything else you must set it up with the simulation.engine
  */
 public class ApplicationEntryPoint implements PulseEntity{
     /**
@@ -26,6 +27,7 @@ public class ApplicationEntryPoint implements PulseEntity{
 
     private GUI _gui;
     private EHB _ehb;
+    private EHBRunner _ehbRunner; // Null during a replay (see ReplayDriver)
     private Car _car;
     private Sun _sun;
     private boolean _init = true;
@@ -35,6 +37,8 @@ public class ApplicationEntryPoint implements PulseEntity{
     private List<Integer> _cloudYLocs;
     private List<Integer> _cloudXLocs;
     private double _initialCarY = 0.0; // Used to correct the position of the sun
+    private ActorSnapshot _worldSnapshot; // Everything that moves, as it was after init (see reset)
+    private StatCollector _statCollector; // Only used to export a headless run (see sim_export_path)
 
     {
         _cloudSpeeds = Arrays.asList(0, 8, 12, 20);
@@ -48,7 +52,15 @@ public class ApplicationEntryPoint implements PulseEntity{
     public void init()
     {
         _clouds = new ArrayList<>();
+        _worldSnapshot = new ActorSnapshot();
         Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).setValue("false");
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_REPLAY, "false"));
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_WARM_RESET, "true"));
+        // Headless runs are often scripted, so they only write files when asked to.
+        String exportPath = Engine.isHeadless() ? "" : "session_stats";
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_EXPORT_PATH, exportPath));
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_EXPORT_CSV, "false"));
+        boolean isReplaying = Engine.getConsoleVariables().find(SimGlobals.SIM_REPLAY).getcvarAsBool();
         _registerSimulationMessages();
         // instances of the interfaces so that they do get creates
         new BrakeInterface();
@@ -57,8 +69,9 @@ public class ApplicationEntryPoint implements PulseEntity{
         new GearInterface();
 
         Engine.getMessagePump().sendMessage(new Message(Singleton.ADD_PULSE_ENTITY,this));
-        _ehb = new EHB();
-        _gui = new GUI();
+        _startController(isReplaying);
+        // There is no window to put the GUI in when running headless
+        if (!Engine.isHeadless()) _gui = new GUI();
         _car = new Car();
         _car.setGUI(_gui);
         _car.addToWorld();
@@ -68,6 +81,46 @@ public class ApplicationEntryPoint implements PulseEntity{
         camera.setAsMainCamera();
         _buildWorld();
         _buildMetricPanels();
+        _worldSnapshot.add(_car);
+        _worldSnapshot.add(_sun);
+        for (SingleFrameEntity cloud : _clouds) _worldSnapshot.add(cloud);
+        if (Engine.isHeadless() && !Engine.getConsoleVariables().find(SimGlobals.SIM_EXPORT_PATH).getcvarValue().isEmpty())
+        {
+            _statCollector = new StatCollector();
+        }
+        if (Engine.isHeadless() && !isReplaying) new HeadlessScenario().start();
+    }
+
+    /**
+     * Puts the car and the world back the way init() left them without building
+     * anything new, so the textures, GUI and message handlers all stay as they are.
+     * The EHB does get replaced so every run starts with a fresh controller.
+     */
+    public void reset()
+    {
+        Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).setValue("false");
+        _startController(Engine.getConsoleVariables().find(SimGlobals.SIM_REPLAY).getcvarAsBool());
+        _worldSnapshot.restore();
+        _car.reset();
+        _sun.reset();
+        if (_gui != null) _gui.reset();
+        _initialCarY = _car.getLocationY();
+        _init = true;
+    }
+
+    // Replaces the EHB and the thread that runs it.
+    private void _startController(boolean isReplaying)
+    {
+        _ehb = new EHB();
+        // Init runs again after a soft reset and so does this after a warm reset, so retire
+        // the previous controller thread
+        if (_ehbRunner != null)
+        {
+            _ehbRunner.printReport();
+            _ehbRunner.stop();
+        }
+        // A replay feeds the recorded brake pressures in itself
+        _ehbRunner = isReplaying ? null : new EHBRunner(_ehb);
     }
 
     // Let the engine know which messages to listen for.
@@ -83,6 +136,8 @@ public class ApplicationEntryPoint implements PulseEntity{
         Engine.getMessagePump().registerMessage(new Message(SimGlobals.SPEED));
         Engine.getMessagePump().registerMessage(new Message(SimGlobals.SET_BUTTON_COLOR));
         Engine.getMessagePump().registerMessage(new Message(SimGlobals.JERK));
+        Engine.getMessagePump().registerMessage(new Message(SimGlobals.BRAKE_FORCE));
+        Engine.getMessagePump().registerMessage(new Message(SimGlobals.TRACTION_LOST));
         Engine.getMessagePump().signalInterest(SimGlobals.RESET_SIM, _helper);
     }
 
@@ -97,6 +152,7 @@ public class ApplicationEntryPoint implements PulseEntity{
        {
            BackgroundPanel bp = new BackgroundPanel("resources/img/world/background"+i+".jpeg",-1000 + (1000*(i-1)),-15,10,1000,700);
            bp.addToWorld();
+           _worldSnapshot.add(bp); // The renderer moves these around as the world wraps
            // There should probably be a better heuristic to decide where the clouds are placed.
            for(int j = 0; j < _cloudSpeeds.size(); j++) _clouds.add(new SingleFrameEntity(cloudPath,_cloudXLocs.get(j)+(1000*(i-1)), _cloudYLocs.get(j),5, _cloudSpeeds.get(j),0,100,100));
            for(SingleFrameEntity cloud : _clouds) cloud.addToWorld();
@@ -125,18 +181,44 @@ public class ApplicationEntryPoint implements PulseEntity{
     /**
      * Tells the application we need to shutdown
      */
-    public void shutdown() {}
+    public void shutdown()
+    {
+        if (_statCollector != null) _exportStats();
+        if (_ehbRunner == null) return;
+        _ehbRunner.printReport();
+        _ehbRunner.stop();
+    }
+
+    // Exports the headless run and waits for the files, since the process ends once this returns.
+    private void _exportStats()
+    {
+        _statCollector.stop();
+        try
+        {
+            _statCollector.export(Engine.getConsoleVariables().find(SimGlobals.SIM_EXPORT_PATH).getcvarValue(),
+                    Engine.getConsoleVariables().find(SimGlobals.SIM_EXPORT_CSV).getcvarAsBool()).get();
+        }
+        catch (ExecutionException e)
+        {
+            // The exporter has already said why
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        _statCollector = null;
+    }
 
     /**
-     * Call's the EHB's main update procedure when the simulation is running and
-     * handles the sun actors translations.
+     * Call's the EHB's main update procedure (on the controller thread, see EHBRunner)
+     * when the simulation is running and handles the sun actors translations.
      * @param deltaSeconds Change in seconds since the last update.
      *                     If the simulation.engine is running at 60 frames per second,
      */
     @Override
     public void pulse(double deltaSeconds) {
-        if(_car.running()) _ehb.update();
-        if(_init)_gui.setInitColor();
+        if(_car.running() && _ehbRunner != null) _ehbRunner.tick();
+        if(_init && _gui != null)_gui.setInitColor();
         _init = false;
         double currCarY = _car.getLocationY();
         if (currCarY != _initialCarY) {
@@ -147,7 +229,7 @@ public class ApplicationEntryPoint implements PulseEntity{
     }
 
     /**
-     * Inner class to handle RESET_SIM messages relayed by the engine.
+     * Inner class to handle RESET_SIM messages relayed by the engine - see SIM_WARM_RESET.
      */
     class Helper implements MessageHandler
     {
@@ -156,7 +238,8 @@ public class ApplicationEntryPoint implements PulseEntity{
         {
             if(message.getMessageName().equals(SimGlobals.RESET_SIM))
             {
-                Engine.getMessagePump().sendMessage(new Message(Singleton.PERFORM_SOFT_RESET));
+                boolean warm = Engine.getConsoleVariables().find(SimGlobals.SIM_WARM_RESET).getcvarAsBool();
+                Engine.getMessagePump().sendMessage(new Message(warm ? Singleton.PERFORM_WARM_RESET : Singleton.PERFORM_SOFT_RESET));
             }
         }
     }
@@ -26,6 +26,7 @@ public class BarEntity extends RenderEntity
     private int _yInit;
     private int _depth;
     private ArrayList<Color> _colors = new ArrayList<>();
+    private Color _initColor;
     private Color _currentColor;
     private double _speedToColorIndexMult;
     private BarEntityModes _Mode;
@@ -46,6 +47,7 @@ public class BarEntity extends RenderEntity
     {
         _Mode = mode;
         _yInit=y;_yLoc=y;_xLoc=x;_depth=d;
+        _initColor = initColor;
         _currentColor = initColor;
         setColor(initColor);
         setLocationXYDepth(x, y,d);
@@ -78,6 +80,15 @@ public class BarEntity extends RenderEntity
 
     }
 
+    // Put the bar back to its starting location and color.
+    void reset()
+    {
+        _yLoc = _yInit;
+        _currentColor = _initColor;
+        setLocationXYDepth(_xLoc, _yLoc, _depth);
+        setColor(_currentColor);
+    }
+
     /**
      * Based off updated state change the bar in the world.
      * @param deltaSeconds Change in seconds since the last update.
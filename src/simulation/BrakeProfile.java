@@ -0,0 +1,82 @@
+package simulation;
+
+/**
+ * Brake pressure (0 to 100) as a function of the seconds since the hand brake
+ * was pressed. Used by the sweep runner in place of an EHB policy.
+ *
+ * Profiles are written as "type:pressure[:seconds]":
+ *      constant:60     - 60% the whole time
+ *      ramp:100:1.5    - 0% rising to 100% over 1.5 seconds, then held
+ *      pulse:100:0.25  - alternates 100% and 0% every 0.25 seconds (must be more than 0)
+ */
+class BrakeProfile
+{
+    private enum Type { CONSTANT, RAMP, PULSE }
+
+    private final Type _type;
+    private final double _pressure;
+    private final double _seconds;
+    private final String _description;
+
+    private BrakeProfile(Type type, double pressure, double seconds, String description)
+    {
+        _type = type;
+        _pressure = pressure;
+        _seconds = seconds;
+        _description = description;
+    }
+
+    /**
+     * @param profile description of the form "type:pressure[:seconds]"
+     * @throws IllegalArgumentException if the profile can't be understood
+     */
+    static BrakeProfile parse(String profile)
+    {
+        String[] parts = profile.trim().split(":");
+        try
+        {
+            double pressure = Double.parseDouble(parts[1]);
+            switch (parts[0].toLowerCase())
+            {
+                case "constant":
+                    return new BrakeProfile(Type.CONSTANT, pressure, 0.0, profile);
+                case "ramp":
+                    return new BrakeProfile(Type.RAMP, pressure, Double.parseDouble(parts[2]), profile);
+                case "pulse":
+                    double period = Double.parseDouble(parts[2]);
+                    // A period of 0 or less (or NaN) would never switch
+                    if (!(period > 0)) break;
+                    return new BrakeProfile(Type.PULSE, pressure, period, profile);
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+        {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid brake profile: " + profile);
+    }
+
+    /**
+     * @param seconds time since the hand brake was pressed
+     * @return brake pressure to apply at that time
+     */
+    double pressureAt(double seconds)
+    {
+        switch (_type)
+        {
+            case RAMP:
+                if (_seconds <= 0 || seconds >= _seconds) return _pressure;
+                return _pressure * seconds / _seconds;
+            case PULSE:
+                return ((long)(seconds / _seconds) % 2 == 0) ? _pressure : 0.0;
+            default:
+                return _pressure;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return _description;
+    }
+}
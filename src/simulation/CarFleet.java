@@ -0,0 +1,170 @@
+package simulation;
+
+import interfaces.GearTypes;
+
+/**
+ * Steps a large number of independent cars at once. It runs the same model as
+ * CarPhysics (its static methods - drag, rolling friction and the static vs
+ * kinetic brake force) and produces bit-for-bit the same speeds and jerks (see
+ * checks/simulation/CarFleetCheck.java), but the state of every car is
+ * kept in parallel primitive arrays (one array per field, indexed by car) rather
+ * than one object per car. A step then walks each array front to back, which
+ * keeps the whole fleet streaming through the cache instead of chasing one
+ * object per car.
+ *
+ * Cars are numbered 0 to size() - 1. Disjoint ranges of cars may be stepped on
+ * different threads at the same time (see step(int, int, double)).
+ */
+class CarFleet
+{
+    private final int _size;
+    private final double[] _speed;
+    private final double[] _engineAcceleration;
+    private final double[] _targetAcceleration;
+    private final double[] _previousAcceleration;
+    private final double[] _brakePercentage;
+    private final double[] _jerk;
+    private final byte[] _gear;
+    private final boolean[] _isBrakeActive;
+    private final boolean[] _isActive;
+    private final boolean[] _tractionLost;
+
+    /**
+     * @param size number of cars - none of them are active until start() is called
+     */
+    CarFleet(int size)
+    {
+        _size = size;
+        _speed = new double[size];
+        _engineAcceleration = new double[size];
+        _targetAcceleration = new double[size];
+        _previousAcceleration = new double[size];
+        _brakePercentage = new double[size];
+        _jerk = new double[size];
+        _gear = new byte[size];
+        _isBrakeActive = new boolean[size];
+        _isActive = new boolean[size];
+        _tractionLost = new boolean[size];
+    }
+
+    int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Starts the given car with the given speed (m/s) and gear - see CarPhysics.start()
+     */
+    void start(int car, double speed, GearTypes gear)
+    {
+        _speed[car] = speed;
+        _gear[car] = (byte)gear.ordinal();
+        _engineAcceleration[car] = CarPhysics.cruiseAcceleration(_gear[car], speed * speed);
+        _targetAcceleration[car] = _engineAcceleration[car];
+        _isActive[car] = true;
+    }
+
+    void stop(int car)
+    {
+        _isActive[car] = false;
+    }
+
+    void setGear(int car, GearTypes gear)
+    {
+        _gear[car] = (byte)gear.ordinal();
+        _targetAcceleration[car] = CarPhysics.cruiseAcceleration(_gear[car], _speed[car] * _speed[car]);
+    }
+
+    void setBrakePercentage(int car, double brakePercentage)
+    {
+        _brakePercentage[car] = brakePercentage;
+    }
+
+    void activateBrake(int car)
+    {
+        _targetAcceleration[car] = CarPhysics.cruiseAcceleration(_gear[car], 2);
+        _isBrakeActive[car] = true;
+    }
+
+    void deactivateBrake(int car)
+    {
+        _isBrakeActive[car] = false;
+        _targetAcceleration[car] = CarPhysics.cruiseAcceleration(_gear[car], _speed[car] * _speed[car]);
+    }
+
+    /**
+     * Advances every active car by one step
+     */
+    void step(double deltaSeconds)
+    {
+        step(0, _size, deltaSeconds);
+    }
+
+    /**
+     * Advances the active cars numbered from (inclusive) to to (exclusive) by one step
+     */
+    void step(int from, int to, double deltaSeconds)
+    {
+        final double[] speeds = _speed;
+        final double[] engineAccelerations = _engineAcceleration;
+        final double[] targetAccelerations = _targetAcceleration;
+        final double[] previousAccelerations = _previousAcceleration;
+        final double[] brakePercentages = _brakePercentage;
+        final double[] jerks = _jerk;
+        final byte[] gears = _gear;
+        final boolean[] brakesActive = _isBrakeActive;
+        final boolean[] active = _isActive;
+        final boolean[] tractionLost = _tractionLost;
+        final double rate = CarPhysics.ENGINE_JERK_LIMIT * deltaSeconds;
+        for (int i = from; i < to; ++i)
+        {
+            if (!active[i]) continue;
+            double speed = speeds[i];
+            byte gear = gears[i];
+            boolean isBrakeActive = brakesActive[i];
+            double engineAcceleration = engineAccelerations[i];
+            if (Math.abs(speed) < 2) engineAcceleration = CarPhysics.idleAcceleration(gear, engineAcceleration);
+            int speedMod = CarPhysics.speedMod(speed);
+            double appliedBrakeForce = CarPhysics.appliedBrakeForce(brakePercentages[i]);
+            double frictionThreshold = CarPhysics.frictionThreshold(speed);
+            double actualBrakeForce = CarPhysics.actualBrakeForce(appliedBrakeForce, frictionThreshold);
+            tractionLost[i] = isBrakeActive && appliedBrakeForce > frictionThreshold;
+            int brake = (speed == 0 || !isBrakeActive) ? 0 : 1;
+            engineAcceleration = CarPhysics.nextEngineAcceleration(engineAcceleration, targetAccelerations[i], gear, rate);
+            engineAccelerations[i] = engineAcceleration;
+            double acceleration = CarPhysics.acceleration(speed, speedMod, brake, actualBrakeForce, engineAcceleration);
+            double newSpeed = CarPhysics.nextSpeed(speed, acceleration, deltaSeconds, brake, speedMod, appliedBrakeForce);
+            speeds[i] = newSpeed;
+            jerks[i] = CarPhysics.jerk(previousAccelerations[i], newSpeed - speed, deltaSeconds);
+            previousAccelerations[i] = (newSpeed-speed);
+        }
+    }
+
+    boolean isActive(int car)
+    {
+        return _isActive[car];
+    }
+
+    /**
+     * @return speed in meters/second
+     */
+    double getSpeed(int car)
+    {
+        return _speed[car];
+    }
+
+    double getJerk(int car)
+    {
+        return _jerk[car];
+    }
+
+    double getBrakePercentage(int car)
+    {
+        return _brakePercentage[car];
+    }
+
+    boolean isTractionLost(int car)
+    {
+        return _tractionLost[car];
+    }
+}
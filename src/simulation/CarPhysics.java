@@ -0,0 +1,330 @@
+package simulation;
+
+import interfaces.GearTypes;
+
+/**
+ * The car's physics without any of its drawing or messaging. Car owns one of
+ * these and forwards the state changes it is told about, and the sweep runner
+ * steps thousands of them on their own.
+ *
+ * Every piece of state lives in the instance, so any number of them can be
+ * stepped on different threads at the same time.
+ *
+ * The model itself is a set of static methods on primitives which CarFleet
+ * also steps its arrays with, so there is only one copy of it.
+ */
+class CarPhysics
+{
+    // .015 m/s^2 per step at the old hardcoded 0.0217s step
+    static final double ENGINE_JERK_LIMIT = .015 / 0.0217;
+    private static final double _mass = 1600; // in kg
+    private static final double _drag_c = 2; // drag coefficient
+    // Coefficient of kinetic friction. this is constant
+    private static final double _uk = .68; // coefficient of kinetic friction
+    private static final float _g = 9.81f;
+    private static final double COEFFICIENT_OF_ROLLING_FRICTION = .002796;
+    // Engine acceleration in drive while below 2 m/s (reverse is the negative)
+    private static final double IDLE_ACCELERATION = (float)((Math.pow(4,2) * (_drag_c / _mass)) + (_g * .02f));
+
+    // Gears as the static methods take them (GearTypes ordinals)
+    static final int NO_GEAR = -1; // None picked yet
+    static final int PARK = GearTypes.PARK.ordinal();
+    static final int REVERSE = GearTypes.REVERSE.ordinal();
+    static final int NEUTRAL = GearTypes.NEUTRAL.ordinal();
+    static final int DRIVE = GearTypes.DRIVE.ordinal();
+
+    private double _speed;
+    private GearTypes _gear;
+    // is the brake on?
+    private boolean _isActive;
+    private boolean _simIsActive = false;
+    private double _appliedBrakeForce = 0;
+    private double _actualBrakeForce;
+    private double _brakeForce = 0; // What the brake actually applied during the last step
+    private double _brakePercentage;
+    private double _engineAcceleration;
+    private double _previousAcceleration;
+    // this is the acceleration we want from the engine. Prevents sudden acceleration
+    private double _targetAcceleration;
+    private double _jerk = 0.0;
+    private boolean _tractionLost = false;
+
+    /**
+     * Starts the simulation with the given speed (m/s) and gear
+     */
+    void start(double speed, GearTypes gear)
+    {
+        _speed = speed;
+        _gear = gear;
+        _engineAcceleration = _cruiseAcceleration(_speed * _speed);
+        _targetAcceleration = _engineAcceleration;
+        _simIsActive = true;
+    }
+
+    /**
+     * Stops the simulation - step() does nothing until start() is called again
+     */
+    void stop()
+    {
+        _simIsActive = false;
+    }
+
+    void setGear(GearTypes gear)
+    {
+        _gear = gear;
+        _targetAcceleration = _cruiseAcceleration(_speed * _speed);
+    }
+
+    /**
+     * @param brakePercentage requested brake pressure (0 to 100)
+     */
+    void setBrakePercentage(double brakePercentage)
+    {
+        _brakePercentage = brakePercentage;
+    }
+
+    void activateBrake()
+    {
+        _targetAcceleration = _cruiseAcceleration(2);
+        _isActive = true;
+    }
+
+    void deactivateBrake()
+    {
+        _isActive = false;
+        _targetAcceleration = _cruiseAcceleration(_speed * _speed);
+    }
+
+    // Engine acceleration needed to hold the given squared speed in the current gear
+    private double _cruiseAcceleration(double speedSquared)
+    {
+        return cruiseAcceleration(_gearIndex(), speedSquared);
+    }
+
+    private int _gearIndex()
+    {
+        return _gear == null ? NO_GEAR : _gear.ordinal();
+    }
+
+    /**
+     * Advances the physics by one step
+     * @param deltaSeconds the engine's fixed step size, so results don't depend on the frame rate
+     */
+    void step(double deltaSeconds)
+    {
+        // sim is not active: return
+        if(!_simIsActive) return;
+        int gear = _gearIndex();
+        if(Math.abs(_speed) < 2) _engineAcceleration = idleAcceleration(gear, _engineAcceleration);
+        int speedMod = speedMod(_speed);
+        _appliedBrakeForce = appliedBrakeForce(_brakePercentage);
+        double frictionThreshold = frictionThreshold(_speed);
+        _actualBrakeForce = actualBrakeForce(_appliedBrakeForce, frictionThreshold);
+        // Used for animation: determine when control is lost
+        _tractionLost = _isActive && _appliedBrakeForce > frictionThreshold;
+        int brake = (_speed == 0 || !_isActive) ? 0 : 1;
+        _brakeForce = brake * _actualBrakeForce;
+        _engineAcceleration = nextEngineAcceleration(_engineAcceleration, _targetAcceleration, gear,
+                ENGINE_JERK_LIMIT * deltaSeconds);
+        double acceleration = acceleration(_speed, speedMod, brake, _actualBrakeForce, _engineAcceleration);
+        // save last speed to calculate jerk
+        double lastSpeed = _speed;
+        _speed = nextSpeed(_speed, acceleration, deltaSeconds, brake, speedMod, _appliedBrakeForce);
+        _jerk = jerk(_previousAcceleration, _speed - lastSpeed, deltaSeconds);
+        _previousAcceleration = (_speed-lastSpeed);
+    }
+
+    /*
+     * The model. Gears are GearTypes ordinals or NO_GEAR, and each method is one
+     * step of step() above in the order it uses them.
+     */
+
+    /**
+     * @return engine acceleration needed to hold the given squared speed in the given gear
+     */
+    static double cruiseAcceleration(int gear, double speedSquared)
+    {
+        if(gear == REVERSE) return -(float)((speedSquared*(_drag_c / _mass)) + (_g *.02f));
+        else if(gear == DRIVE) return (float)(speedSquared*(_drag_c / _mass)) + (_g *.02f);
+        return 0.0f; // Neutral and park
+    }
+
+    /**
+     * @return engine acceleration while creeping below 2 m/s (unchanged without a gear)
+     */
+    static double idleAcceleration(int gear, double engineAcceleration)
+    {
+        if (gear == REVERSE) return -IDLE_ACCELERATION;
+        else if (gear == DRIVE) return IDLE_ACCELERATION;
+        else if (gear == NEUTRAL || gear == PARK) return 0.0f;
+        return engineAcceleration;
+    }
+
+    /**
+     * @return -1, 0 or 1 - the direction negative forces act against
+     */
+    static int speedMod(double speed)
+    {
+        if(speed < 0) return -1;
+        else if(speed == 0) return 0;
+        return 1;
+    }
+
+    /**
+     * @return force (newtons) the brake is asked for at the given pressure
+     */
+    static double appliedBrakeForce(double brakePercentage)
+    {
+        return 167 * brakePercentage;
+    }
+
+    /**
+     * @return force (newtons) above which the tires slip - static friction, which
+     *         was found by interpolating between known coefficient/speed points
+     */
+    static double frictionThreshold(double speed)
+    {
+        double us = .9125 - COEFFICIENT_OF_ROLLING_FRICTION*speed;
+        return us * 9.81 * _mass;
+    }
+
+    /**
+     * @return force (newtons) the brake actually applies - kinetic friction once the tires slip
+     */
+    static double actualBrakeForce(double appliedBrakeForce, double frictionThreshold)
+    {
+        if (appliedBrakeForce < frictionThreshold) return appliedBrakeForce;
+        return _uk * _mass * _g;
+    }
+
+    /**
+     * Moves the engine acceleration towards the target - the engine can change
+     * its acceleration by at most rate (ENGINE_JERK_LIMIT m/s^3 times the step) a step
+     */
+    static double nextEngineAcceleration(double current_acc, double target_acc, int gear, double rate)
+    {
+        boolean slow = false;
+        if(current_acc == target_acc) return target_acc;
+        if(current_acc > target_acc && gear == DRIVE){
+            slow = true;
+        }
+        if(current_acc < target_acc && gear == REVERSE){
+            slow = true;
+        }
+        if(gear == DRIVE){
+            if(!slow) {
+                current_acc += rate;
+                if (current_acc > target_acc) current_acc = target_acc;
+            }
+            else {
+                current_acc -= rate;
+                if(current_acc < target_acc) current_acc = target_acc;
+            }
+        }
+        if(gear == REVERSE){
+            if(!slow){
+                current_acc -= rate;
+                if(current_acc < target_acc) current_acc = target_acc;
+            }
+            else {
+                current_acc += rate;
+                if(current_acc > target_acc) current_acc = target_acc;
+            }
+        }
+        if(gear == NEUTRAL){
+            if(current_acc == 0) return current_acc;
+            if(current_acc>0){
+                current_acc -= rate;
+                if (current_acc < target_acc) current_acc = 0;
+            }
+            if(current_acc<0){
+                current_acc += rate;
+                if (current_acc > target_acc) current_acc = 0;
+            }
+        }
+        return current_acc;
+    }
+
+    /**
+     * @param brake 1 if the brake is acting, otherwise 0
+     * @return the car's acceleration from drag, the brake, rolling friction and the engine
+     */
+    static double acceleration(double speed, int speedMod, int brake, double actualBrakeForce, double engineAcceleration)
+    {
+        // change drag depending on speed
+        double drag_c_ = Math.abs(speed) < 2 ? 0 : _drag_c;
+        // is rolling friction active?
+        int rolling_friction = speed == 0 ? 0 : 1;
+        return speedMod*(-(drag_c_ * Math.pow(speed,2))/ _mass - brake*(actualBrakeForce / _mass) - rolling_friction*(.02 * _g))+ engineAcceleration;
+    }
+
+    /**
+     * @return speed after a step, which the brake never takes past 0
+     */
+    static double nextSpeed(double speed, double acceleration, double deltaSeconds, int brake, int speedMod,
+                            double appliedBrakeForce)
+    {
+        double nextSpeed = speed + acceleration * deltaSeconds;
+        // if speed is at zero and brake is activated, it shouldnt move backward
+        if(brake == 1 && ((speed <= 0 && nextSpeed > 0) || (speed >= 0 && nextSpeed < 0))) nextSpeed = 0;
+        // keep speed at 0
+        if(speedMod == 0 && appliedBrakeForce > 0) nextSpeed = 0;
+        return nextSpeed;
+    }
+
+    /**
+     * @param speedChange change in speed over the step
+     * @return jerk given the change in speed over the previous step
+     */
+    static double jerk(double previousSpeedChange, double speedChange, double deltaSeconds)
+    {
+        return (previousSpeedChange-speedChange)/deltaSeconds;
+    }
+
+    /**
+     * @return true between start() and stop()
+     */
+    boolean isActive()
+    {
+        return _simIsActive;
+    }
+
+    /**
+     * @return speed in meters/second
+     */
+    double getSpeed()
+    {
+        return _speed;
+    }
+
+    double getJerk()
+    {
+        return _jerk;
+    }
+
+    /**
+     * @return force (newtons) the brake applied during the last step
+     */
+    double getBrakeForce()
+    {
+        return _brakeForce;
+    }
+
+    double getBrakePercentage()
+    {
+        return _brakePercentage;
+    }
+
+    GearTypes getGear()
+    {
+        return _gear;
+    }
+
+    /**
+     * @return true if the brake force exceeded what static friction can hold during the last step
+     */
+    boolean isTractionLost()
+    {
+        return _tractionLost;
+    }
+}
@@ -0,0 +1,136 @@
+package simulation;
+
+/**
+ * Keeps a chart-sized picture of a series however long it grows, using
+ * min/max decimation: consecutive samples are grouped into buckets and only
+ * the lowest and highest sample of each bucket are kept, so every peak stays
+ * visible no matter how far the series is shrunk.
+ *
+ * It is built up as samples arrive rather than from the whole series at once.
+ * Each bucket holds the same number of samples, and once every bucket is full
+ * neighboring buckets are merged in pairs and each one holds twice as many
+ * from then on. Adding a sample is O(1) (merging is O(buckets) but only happens
+ * each time the series doubles) and reading the points is O(buckets), never
+ * O(samples).
+ *
+ * Only one thread may use it.
+ */
+class Downsampler
+{
+    private final int _maxBuckets;
+    // Lowest and highest sample of each bucket
+    private final double[] _minTimes;
+    private final double[] _minValues;
+    private final double[] _maxTimes;
+    private final double[] _maxValues;
+    private int _numBuckets = 0;
+    private long _samplesPerBucket = 1;
+    private long _samplesInLastBucket = 0;
+
+    /**
+     * @param maxBuckets most buckets kept - each gives at most two points
+     */
+    Downsampler(int maxBuckets)
+    {
+        if (maxBuckets < 2) throw new IllegalArgumentException("Downsampler needs at least 2 buckets");
+        _maxBuckets = maxBuckets - maxBuckets % 2; // Merged in pairs
+        _minTimes = new double[_maxBuckets];
+        _minValues = new double[_maxBuckets];
+        _maxTimes = new double[_maxBuckets];
+        _maxValues = new double[_maxBuckets];
+    }
+
+    /**
+     * Adds the next sample of the series
+     * @param time when the sample was taken - never earlier than the previous sample
+     * @param value value at that time
+     */
+    void add(double time, double value)
+    {
+        if (_numBuckets == 0 || _samplesInLastBucket == _samplesPerBucket)
+        {
+            if (_numBuckets == _maxBuckets) _mergePairs();
+            int bucket = _numBuckets++;
+            _minTimes[bucket] = time;
+            _minValues[bucket] = value;
+            _maxTimes[bucket] = time;
+            _maxValues[bucket] = value;
+            _samplesInLastBucket = 1;
+            return;
+        }
+        int bucket = _numBuckets - 1;
+        if (value < _minValues[bucket])
+        {
+            _minTimes[bucket] = time;
+            _minValues[bucket] = value;
+        }
+        if (value > _maxValues[bucket])
+        {
+            _maxTimes[bucket] = time;
+            _maxValues[bucket] = value;
+        }
+        ++_samplesInLastBucket;
+    }
+
+    void clear()
+    {
+        _numBuckets = 0;
+        _samplesPerBucket = 1;
+        _samplesInLastBucket = 0;
+    }
+
+    /**
+     * @return most points getPoints can write
+     */
+    int getMaxPoints()
+    {
+        return 2 * _maxBuckets;
+    }
+
+    /**
+     * Writes the points in order of time into the given arrays - a bucket whose
+     * lowest and highest sample are the same gives one point, the rest give two
+     * @return number of points written (at most getMaxPoints)
+     */
+    int getPoints(double[] times, double[] values)
+    {
+        int numPoints = 0;
+        for (int bucket = 0; bucket < _numBuckets; ++bucket)
+        {
+            boolean minFirst = _minTimes[bucket] <= _maxTimes[bucket];
+            numPoints = _addPoint(times, values, numPoints, minFirst ? _minTimes[bucket] : _maxTimes[bucket],
+                    minFirst ? _minValues[bucket] : _maxValues[bucket]);
+            if (_minTimes[bucket] == _maxTimes[bucket]) continue;
+            numPoints = _addPoint(times, values, numPoints, minFirst ? _maxTimes[bucket] : _minTimes[bucket],
+                    minFirst ? _maxValues[bucket] : _minValues[bucket]);
+        }
+        return numPoints;
+    }
+
+    private static int _addPoint(double[] times, double[] values, int index, double time, double value)
+    {
+        times[index] = time;
+        values[index] = value;
+        return index + 1;
+    }
+
+    // Halves the number of buckets - only called once every bucket is full
+    private void _mergePairs()
+    {
+        for (int bucket = 0; bucket < _maxBuckets / 2; ++bucket)
+        {
+            int first = bucket * 2;
+            int second = first + 1;
+            // Ties keep the earlier sample
+            boolean secondIsLower = _minValues[second] < _minValues[first];
+            boolean secondIsHigher = _maxValues[second] > _maxValues[first];
+            _minTimes[bucket] = secondIsLower ? _minTimes[second] : _minTimes[first];
+            _minValues[bucket] = secondIsLower ? _minValues[second] : _minValues[first];
+            _maxTimes[bucket] = secondIsHigher ? _maxTimes[second] : _maxTimes[first];
+            _maxValues[bucket] = secondIsHigher ? _maxValues[second] : _maxValues[first];
+        }
+        _numBuckets = _maxBuckets / 2;
+        _samplesPerBucket *= 2;
+        _samplesInLastBucket = _samplesPerBucket;
+    }
+}
@@ -0,0 +1,202 @@
+package simulation;
+
+import ehb.EHB;
+import simulation.engine.ConsoleVariable;
+import simulation.engine.Engine;
+import simulation.engine.Message;
+import simulation.engine.MessageHandler;
+import simulation.engine.Singleton;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs EHB.update() on its own thread so that a slow or stuck controller
+ * cannot freeze physics or rendering.
+ *
+ * Every simulation step the engine hands the controller a tick and waits for
+ * it to finish, but only until the deadline (sim_ehb_deadline_ms) passes. A
+ * well-behaved controller therefore sees exactly one update per step, just
+ * as if it were called directly. A tick that misses its deadline counts as an
+ * overrun and the simulation moves on without it; while the controller is
+ * still busy with that tick the following steps are skipped for it (and
+ * counted) instead of being queued up.
+ *
+ * The time from handing out a tick to the controller finishing it is kept in
+ * a histogram so the controller can be checked against its real-time budget.
+ */
+class EHBRunner implements Runnable, MessageHandler
+{
+    // How long each side busy-waits for the other before parking - steps come
+    // microseconds apart when running faster than real time. Spinning on a single
+    // core only delays the other thread, so go straight to parking there.
+    private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 2000 : 0;
+    // How long stop() waits for a tick in progress to finish
+    private static final long STOP_TIMEOUT_MS = 250;
+    private final EHB _ehb;
+    private final Thread _thread;
+    private final LatencyHistogram _latencies = new LatencyHistogram();
+    private volatile boolean _running = true;
+    private volatile long _requestedTick = 0;
+    private volatile long _completedTick = 0;
+    private volatile long _requestTimeNS = 0;
+    private volatile Thread _engineThread;
+    private long _deadlineNS;
+    // Only touched by the engine thread
+    private long _overruns = 0;
+    private long _skippedTicks = 0;
+    // Only written by the controller thread, read by printReport
+    private volatile long _failedTicks = 0;
+
+    /**
+     * Creates and starts the controller thread
+     * @param ehb controller to update
+     */
+    EHBRunner(EHB ehb)
+    {
+        _ehb = ehb;
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_EHB_DEADLINE_MS, "5"));
+        _setDeadline(Engine.getConsoleVariables().find(SimGlobals.SIM_EHB_DEADLINE_MS).getcvarAsFloat());
+        Engine.getMessagePump().signalInterest(Singleton.CONSOLE_VARIABLE_CHANGED, this);
+        _thread = new Thread(this, "EHB controller");
+        _thread.setDaemon(true); // A stuck controller must not keep the process alive
+        _thread.start();
+    }
+
+    /**
+     * Called by the engine once per simulation step. Returns once the controller
+     * has finished the tick or the deadline has passed, whichever comes first.
+     */
+    void tick()
+    {
+        if (_completedTick != _requestedTick)
+        {
+            // Still working on a tick that already missed its deadline
+            ++_skippedTicks;
+            return;
+        }
+        long tick = _requestedTick + 1;
+        long requestTimeNS = System.nanoTime();
+        _engineThread = Thread.currentThread();
+        _requestTimeNS = requestTimeNS;
+        _requestedTick = tick;
+        LockSupport.unpark(_thread);
+        long deadlineNS = requestTimeNS + _deadlineNS;
+        int spins = 0;
+        while (_completedTick != tick)
+        {
+            long nowNS = System.nanoTime();
+            if (nowNS >= deadlineNS)
+            {
+                if (_overruns++ == 0)
+                {
+                    System.err.println("WARNING: EHB.update() missed its " + (_deadlineNS / 1_000_000.0) +
+                            "ms deadline - the simulation will keep running without it");
+                }
+                return;
+            }
+            if (++spins < SPIN_TRIES) Thread.onSpinWait();
+            else LockSupport.parkNanos(deadlineNS - nowNS);
+        }
+    }
+
+    /**
+     * Stops the controller thread and waits (for up to STOP_TIMEOUT_MS) for its
+     * current tick, if any, to finish. Once this returns the old controller has
+     * stopped sending brake pressures and button colors, so a reset can restore
+     * the car without them leaking into the next run - unless the controller is
+     * stuck, which is reported.
+     */
+    void stop()
+    {
+        _running = false;
+        LockSupport.unpark(_thread);
+        Engine.getMessagePump().removeInterest(Singleton.CONSOLE_VARIABLE_CHANGED, this);
+        try
+        {
+            _thread.join(STOP_TIMEOUT_MS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (_thread.isAlive())
+        {
+            System.err.println("WARNING: EHB.update() did not return within " + STOP_TIMEOUT_MS +
+                    "ms of the reset - it may still change the new run's brake pressure");
+        }
+    }
+
+    /**
+     * Prints tick counts and the tick latency distribution
+     */
+    void printReport()
+    {
+        System.out.println("EHB: " + _latencies.getCount() + " ticks completed, " + _overruns + " overruns, " +
+                _skippedTicks + " skipped, " + _failedTicks + " threw; latency " + _latencies.summary());
+    }
+
+    long getOverrunCount()
+    {
+        return _overruns;
+    }
+
+    long getSkippedTickCount()
+    {
+        return _skippedTicks;
+    }
+
+    /**
+     * @return distribution of the time between handing out a tick and the controller finishing it
+     */
+    LatencyHistogram getLatencies()
+    {
+        return _latencies;
+    }
+
+    // Controller thread
+    @Override
+    public void run()
+    {
+        long lastTick = 0;
+        int spins = 0;
+        while (_running)
+        {
+            long tick = _requestedTick;
+            if (tick == lastTick)
+            {
+                if (++spins < SPIN_TRIES) Thread.onSpinWait();
+                else LockSupport.park(this);
+                continue;
+            }
+            spins = 0;
+            try
+            {
+                _ehb.update();
+            }
+            catch (Throwable t)
+            {
+                ++_failedTicks; // Safe without a lock since no other thread writes it
+                t.printStackTrace();
+            }
+            _latencies.record(System.nanoTime() - _requestTimeNS);
+            lastTick = tick;
+            _completedTick = tick;
+            LockSupport.unpark(_engineThread);
+        }
+    }
+
+    @Override
+    public void handleMessage(Message message)
+    {
+        if (message.getMessageName().equals(Singleton.CONSOLE_VARIABLE_CHANGED))
+        {
+            ConsoleVariable cvar = (ConsoleVariable)message.getMessageData();
+            if (cvar.getcvarName().equals(SimGlobals.SIM_EHB_DEADLINE_MS)) _setDeadline(cvar.getcvarAsFloat());
+        }
+    }
+
+    private void _setDeadline(double deadlineMS)
+    {
+        _deadlineNS = (long)(deadlineMS * 1_000_000);
+    }
+}
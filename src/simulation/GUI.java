@@ -93,6 +93,16 @@ public class GUI
       _pressureField.setText(pressureStr);
     }
 
+    /**
+     * Put the GUI back to how it starts without reloading it.
+     */
+    void reset()
+    {
+      _currSpeedField.setText("");
+      _pressureField.setText("");
+      _controller.reset();
+    }
+
     /**
      * Set initial color of the hand brake.
      */
@@ -8,5 +8,8 @@ public enum GraphTypes
 {
     SPEED_VS_TIME,
     PRESSURE_VS_TIME,
-    JERK_AVG_VS_TIME
+    JERK_AVG_VS_TIME,
+    JERK_PEAK_VS_TIME,
+    JERK_P99_VS_TIME,
+    JERK_DEVIATION_VS_TIME
 }
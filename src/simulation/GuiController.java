@@ -21,6 +21,7 @@ import javafx.scene.control.ToggleGroup;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import simulation.engine.ConsoleVariable;
 import simulation.engine.Engine;
 import simulation.engine.Message;
 import simulation.engine.MessageHandler;
@@ -70,6 +71,7 @@ public class GuiController implements Initializable
   public void initialize(URL arg0, ResourceBundle arg1)
   {
     Engine.getMessagePump().signalInterest(SimGlobals.SET_BUTTON_COLOR, _buttonMessageHelper);
+    Engine.getMessagePump().signalInterest(Singleton.CONSOLE_VARIABLE_CHANGED, _buttonMessageHelper);
     _initStats();
     _initGears();
     _initHandBrakeButton();
@@ -106,25 +108,65 @@ public class GuiController implements Initializable
         // Stop simulating movement
         Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).setValue("true");
         _setSpeedField.setDisable(true);
+        if(_statCollector != null) _statCollector.stop();
         _statCollector = new StatCollector(); // Start gathering stats.
+        if(StatsPopupController.isUp) _statController.setStats(_statCollector);
         _statsButton.setDisable(false); // Users is now allowed to view stats.
       }
       else
       {
-        _stopped = true;
-        _startStopSim.setText("Start");
         Engine.getMessagePump().sendMessage(new Message(SimGlobals.RESET_SIM));
         // Start simulating movement
         Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).setValue("false");
-        _setSpeedField.setDisable(false);
-        _parkButton.setDisable(false);
-        _reverseButton.setDisable(false);
-        _neutralButton.setDisable(false);
-        _driveButton.setDisable(false);
+        _showStopped();
       }
     });
   }
 
+  // Let the user set up the next run.
+  private void _showStopped()
+  {
+    _stopped = true;
+    _startStopSim.setText("Start");
+    _setSpeedField.setDisable(false);
+    _enableGears();
+  }
+
+  // Allow every gear change again.
+  private void _enableGears()
+  {
+    _parkButton.setDisable(false);
+    _reverseButton.setDisable(false);
+    _neutralButton.setDisable(false);
+    _driveButton.setDisable(false);
+  }
+
+  // Called when gearStates.cfg is edited while running - re-read the disallowed gear changes.
+  private void _reloadDefaultStates()
+  {
+    _invalidTransitions.clear();
+    _setDefaultStates();
+    if(!_stopped)
+    {
+      _enableGears();
+      _setGearTransitions();
+    }
+  }
+
+  /**
+   * Put the controls back to how they start, keeping the selected gear and entered speed.
+   */
+  void reset()
+  {
+    _showStopped();
+    _handBrake.setText("Activate Brake");
+    _buttonColor = null;
+    // The car keeps reporting its speed after a warm reset - the run being captured is over.
+    // An open stats popup keeps showing it until the next Start.
+    if(_statCollector != null) _statCollector.stop();
+    _statsButton.setDisable(true); // Stats are not available until the simulation starts again.
+  }
+
   // Initialize hand brake button.
   private void _initHandBrakeButton()
   {
@@ -364,7 +406,8 @@ public class GuiController implements Initializable
 
   /**
    * Handles a SET_BUTTON_COLOR message by setting the color of the
-   * handbrake button.
+   * handbrake button, and re-reads the disallowed gear changes when
+   * one of the defaults from gearStates.cfg changes.
    */
   class ButtonMessageHelper implements MessageHandler
   {
@@ -377,6 +420,9 @@ public class GuiController implements Initializable
           _buttonColor = (ButtonColorTypes) message.getMessageData();
           _handBrake.setStyle(_buildCSSString());
           break;
+        case Singleton.CONSOLE_VARIABLE_CHANGED:
+          if(((ConsoleVariable) message.getMessageData()).getcvarName().startsWith("default")) _reloadDefaultStates();
+          break;
 
       }
     }
@@ -0,0 +1,65 @@
+package simulation;
+
+import interfaces.GearTypes;
+import simulation.engine.ConsoleVariable;
+import simulation.engine.Engine;
+import simulation.engine.Message;
+import simulation.engine.Pulsar;
+import simulation.engine.Singleton;
+
+/**
+ * Stands in for the GUI during a headless run. It reads the starting speed,
+ * gear and brake time from console variables (which can be set on the command
+ * line, Ex: +sim_start_speed=60) and sends the same messages the GUI would.
+ */
+class HeadlessScenario
+{
+    private final double MPH_TO_MS = 0.448;
+
+    /**
+     * Registers the scenario console variables and starts the simulation.
+     */
+    void start()
+    {
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_START_SPEED, "60"));
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_START_GEAR, "D"));
+        Engine.getConsoleVariables().registerVariable(new ConsoleVariable(SimGlobals.SIM_BRAKE_TIME, "1.0"));
+        double speed = Engine.getConsoleVariables().find(SimGlobals.SIM_START_SPEED).getcvarAsFloat();
+        GearTypes gear = _getGear(Engine.getConsoleVariables().find(SimGlobals.SIM_START_GEAR).getcvarValue());
+        double brakeTime = Engine.getConsoleVariables().find(SimGlobals.SIM_BRAKE_TIME).getcvarAsFloat();
+        if (gear == GearTypes.REVERSE) speed *= -1;
+        System.out.println("HeadlessScenario: " + gear + " at " + speed + " MPH, brake at " + brakeTime + "s");
+
+        Engine.getMessagePump().sendMessage(new Message(SimGlobals.GEAR_CHANGE, gear));
+        Engine.getMessagePump().sendMessage(new Message(SimGlobals.SPEED, speed*MPH_TO_MS));
+        Engine.getMessagePump().sendMessage(new Message(SimGlobals.START_SIM));
+        Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).setValue("true");
+        if (brakeTime >= 0) _pressBrakeAfter(brakeTime);
+    }
+
+    // Presses the hand brake button once the given number of seconds has passed.
+    private void _pressBrakeAfter(double seconds)
+    {
+        Pulsar[] pulsar = new Pulsar[1];
+        pulsar[0] = new Pulsar(seconds, () -> {
+            Engine.getMessagePump().sendMessage(new Message(SimGlobals.ACTIVATE_BRAKE));
+            pulsar[0].stop();
+        });
+        pulsar[0].start();
+    }
+
+    // Same mapping as the GUI's gear buttons.
+    private GearTypes _getGear(String s)
+    {
+        switch(s)
+        {
+            case "P": return GearTypes.PARK;
+            case "R": return GearTypes.REVERSE;
+            case "N": return GearTypes.NEUTRAL;
+            case "D": return GearTypes.DRIVE;
+            default:
+                System.err.println("UNSUPPORTED GEAR, returning drive.");
+                return GearTypes.DRIVE;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package simulation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of latencies (in nanoseconds). Each power of two is
+ * split into 8 equal sub-buckets, so any reported value is within 12.5% of
+ * the real one while the whole range of a long fits in 512 counters. Recording
+ * never allocates.
+ *
+ * Only one thread may record, but any thread may read.
+ */
+class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final AtomicLongArray _counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private volatile long _totalCount = 0;
+    private volatile long _max = 0;
+
+    /**
+     * Adds a single latency to the histogram
+     * @param valueNS latency in nanoseconds (negative values count as 0)
+     */
+    void record(long valueNS)
+    {
+        if (valueNS < 0) valueNS = 0;
+        int index = _indexFor(valueNS);
+        _counts.lazySet(index, _counts.get(index) + 1);
+        if (valueNS > _max) _max = valueNS;
+        _totalCount = _totalCount + 1;
+    }
+
+    /**
+     * @param percentile value on the range [0.0, 100.0]
+     * @return latency (nanoseconds) which the given percentage of recorded values do not exceed
+     */
+    long getPercentile(double percentile)
+    {
+        long total = _totalCount;
+        if (total == 0) return 0;
+        long target = (long)Math.ceil(total * (percentile / 100.0));
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < _counts.length(); ++i)
+        {
+            seen += _counts.get(i);
+            if (seen >= target) return Math.min(_upperBoundFor(i), _max);
+        }
+        return _max;
+    }
+
+    long getCount()
+    {
+        return _totalCount;
+    }
+
+    long getMax()
+    {
+        return _max;
+    }
+
+    /**
+     * @return one line summary of the distribution in microseconds
+     */
+    String summary()
+    {
+        return String.format("p50 %.1fus, p90 %.1fus, p99 %.1fus, p99.9 %.1fus, max %.1fus",
+                getPercentile(50) / 1000.0, getPercentile(90) / 1000.0, getPercentile(99) / 1000.0,
+                getPercentile(99.9) / 1000.0, _max / 1000.0);
+    }
+
+    // Values below 2 * SUB_BUCKETS get their own bucket, above that each power of
+    // two gets SUB_BUCKETS buckets
+    private static int _indexFor(long value)
+    {
+        if (value < SUB_BUCKETS) return (int)value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    private static long _upperBoundFor(int index)
+    {
+        int group = index >> SUB_BUCKET_BITS;
+        if (group == 0) return index;
+        int shift = group - 1;
+        long lower = (long)(SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,95 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of signed values such as jerk or speed. Like
+ * LatencyHistogram each power of two is split into 8 equal sub-buckets, so a
+ * reported value is within 12.5% of the real one, but negative values get
+ * their own mirrored buckets. Magnitudes from 2^-20 (about 1e-6) up to 2^21
+ * (about 2e6) are told apart - anything smaller counts as 0 and anything
+ * larger counts as the largest bucket. Recording never allocates.
+ *
+ * Only one thread may use a histogram.
+ */
+class LogHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = -20;
+    private static final int MAX_EXPONENT = 20;
+    private static final int BUCKETS_PER_SIGN = (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+    // Negative values from most to least negative, then 0, then positive values
+    private static final int ZERO_BUCKET = BUCKETS_PER_SIGN;
+    private final long[] _counts = new long[BUCKETS_PER_SIGN * 2 + 1];
+    private long _totalCount = 0;
+
+    /**
+     * Adds a single value to the histogram (NaN is ignored)
+     */
+    void record(double value)
+    {
+        if (Double.isNaN(value)) return;
+        int magnitude = _magnitudeIndex(Math.abs(value));
+        if (magnitude < 0) ++_counts[ZERO_BUCKET];
+        else if (value > 0) ++_counts[ZERO_BUCKET + 1 + magnitude];
+        else ++_counts[ZERO_BUCKET - 1 - magnitude];
+        ++_totalCount;
+    }
+
+    void clear()
+    {
+        Arrays.fill(_counts, 0);
+        _totalCount = 0;
+    }
+
+    long getCount()
+    {
+        return _totalCount;
+    }
+
+    /**
+     * @param percentile value on the range [0.0, 100.0]
+     * @return value which the given percentage of recorded values do not exceed
+     */
+    double getPercentile(double percentile)
+    {
+        if (_totalCount == 0) return 0.0;
+        long target = (long)Math.ceil(_totalCount * (percentile / 100.0));
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < _counts.length; ++i)
+        {
+            seen += _counts[i];
+            if (seen >= target) return _upperBoundFor(i);
+        }
+        return _upperBoundFor(_counts.length - 1);
+    }
+
+    // Bucket of the magnitude counting up from the smallest, or -1 if it counts as 0
+    private static int _magnitudeIndex(double magnitude)
+    {
+        int exponent = Math.getExponent(magnitude);
+        if (exponent < MIN_EXPONENT) return -1;
+        if (exponent > MAX_EXPONENT) return BUCKETS_PER_SIGN - 1;
+        // The top bits of the mantissa say where it falls between 2^exponent and 2^(exponent + 1)
+        int subBucket = (int)(Double.doubleToRawLongBits(magnitude) >>> (52 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest value which can land in the bucket
+    private static double _upperBoundFor(int index)
+    {
+        if (index == ZERO_BUCKET) return 0.0;
+        if (index > ZERO_BUCKET) return _magnitudeBound(index - ZERO_BUCKET - 1, 1);
+        return -_magnitudeBound(ZERO_BUCKET - 1 - index, 0);
+    }
+
+    // Lower (side 0) or upper (side 1) edge of a magnitude bucket
+    private static double _magnitudeBound(int magnitude, int side)
+    {
+        int exponent = magnitude / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = magnitude % SUB_BUCKETS;
+        return Math.scalb(1.0 + (subBucket + side) / (double)SUB_BUCKETS, exponent);
+    }
+}
@@ -0,0 +1,212 @@
+package simulation;
+
+import interfaces.GearTypes;
+import simulation.engine.Engine;
+import simulation.engine.Message;
+import simulation.engine.MessageHandler;
+import simulation.engine.SessionReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Re-runs a session recorded with eng_record_session in headless mode and checks
+ * that the car does exactly what it did the first time.
+ *
+ * The inputs which drive the car (START_SIM along with the speed it started at,
+ * GEAR_CHANGE, ACTIVATE_BRAKE, DEACTIVATE_BRAKE and the EHB's SET_PRESSURE) are
+ * read back from the log and sent again before the step they were originally
+ * dispatched in. Neither HeadlessScenario nor the EHB run during a replay - the
+ * recording stands in for both. After every step the speeds and jerks the car
+ * reported are compared bit for bit with the recorded ones and the replay stops
+ * at the first difference.
+ *
+ * Steps are taken back to back, so a replay runs as fast as the physics allows.
+ * It covers the first session of a recording and ends at the first RESET_SIM
+ * (which puts the world back with a reset, warm or soft, and starts a new session).
+ *
+ * Usage (the physics rate must match the recorded run):
+ *      java simulation.ReplayDriver session.rec [+eng_physics_hz=60 ...]
+ * The exit status is 0 if the replay matched and 1 otherwise.
+ */
+public class ReplayDriver implements MessageHandler
+{
+    private final Engine _engine;
+    private final SessionReader _reader;
+    // Car output seen during the current step
+    private double[] _speeds = new double[4];
+    private double[] _jerks = new double[4];
+    private int _numSpeeds;
+    private int _numJerks;
+    // Car output recorded for the current step
+    private double[] _expectedSpeeds = new double[4];
+    private double[] _expectedJerks = new double[4];
+    private int _numExpectedSpeeds;
+    private int _numExpectedJerks;
+    // Last recorded speed - the car starts at whatever speed was sent before START_SIM
+    private double _lastRecordedSpeed = 0.0;
+    private String _lastInput = "none";
+    private long _lastInputStep = 0;
+    private int _numInputs = 0;
+
+    ReplayDriver(Engine engine, SessionReader reader)
+    {
+        _engine = engine;
+        _reader = reader;
+        Engine.getMessagePump().signalInterest(SimGlobals.SPEED, this);
+        Engine.getMessagePump().signalInterest(SimGlobals.JERK, this);
+    }
+
+    /**
+     * Replays the recording until it runs out or the car diverges from it
+     * @return true if every step matched
+     */
+    boolean run()
+    {
+        long startNS = System.nanoTime();
+        boolean hasMessage = _reader.next();
+        while (hasMessage && _reader.getSession() == 1)
+        {
+            long step = _engine.getNumSteps();
+            if (_reader.getStep() == step && _reader.getSimulatedSeconds() != _engine.getSimulatedSeconds())
+            {
+                return _diverged(step, "Simulated time", _reader.getSimulatedSeconds(),
+                        _engine.getSimulatedSeconds(), "(is eng_physics_hz the same as the recorded run?)");
+            }
+            _numExpectedSpeeds = 0;
+            _numExpectedJerks = 0;
+            boolean isReset = false;
+            while (hasMessage && _reader.getSession() == 1 && _reader.getStep() == step)
+            {
+                if (_reader.getMessageName().equals(SimGlobals.RESET_SIM))
+                {
+                    isReset = true;
+                    break;
+                }
+                _replay(step);
+                hasMessage = _reader.next();
+            }
+            if (isReset)
+            {
+                System.out.println("ReplayDriver: the simulation was reset at step " + step + ", stopping here");
+                break;
+            }
+            _numSpeeds = 0;
+            _numJerks = 0;
+            _engine.step();
+            if (!_compare(step, SimGlobals.SPEED, _expectedSpeeds, _numExpectedSpeeds, _speeds, _numSpeeds) ||
+                !_compare(step, SimGlobals.JERK, _expectedJerks, _numExpectedJerks, _jerks, _numJerks))
+            {
+                return false;
+            }
+        }
+        if (hasMessage && _reader.getSession() > 1)
+        {
+            System.out.println("ReplayDriver: the recording continues after a reset (warm or soft) at step " +
+                    _reader.getStep() + ", only the first session is replayed");
+        }
+        double elapsedSeconds = (System.nanoTime() - startNS) / 1_000_000_000.0;
+        long steps = _engine.getNumSteps();
+        System.out.println("ReplayDriver: " + steps + " steps (" + String.format("%.1f", _engine.getSimulatedSeconds()) +
+                " simulated seconds, " + _numInputs + " inputs) matched the recording in " +
+                String.format("%.2fs (%.0f steps/s)", elapsedSeconds, steps / elapsedSeconds));
+        return true;
+    }
+
+    // Sends the current recorded message again if it is an input, or remembers it
+    // for comparison if it is something the car reported
+    private void _replay(long step)
+    {
+        String name = _reader.getMessageName();
+        switch (name)
+        {
+            case SimGlobals.SPEED:
+                _lastRecordedSpeed = _reader.getDoubleData();
+                _expectedSpeeds = _append(_expectedSpeeds, _numExpectedSpeeds++, _lastRecordedSpeed);
+                return;
+            case SimGlobals.JERK:
+                _expectedJerks = _append(_expectedJerks, _numExpectedJerks++, _reader.getDoubleData());
+                return;
+            case SimGlobals.START_SIM:
+                // The car reads its starting speed from SpeedInterface, which holds the last speed dispatched
+                Engine.getMessagePump().sendMessage(new Message(SimGlobals.SPEED, _lastRecordedSpeed));
+                Engine.getMessagePump().sendMessage(new Message(SimGlobals.START_SIM));
+                break;
+            case SimGlobals.GEAR_CHANGE:
+                Engine.getMessagePump().sendMessage(new Message(SimGlobals.GEAR_CHANGE, GearTypes.values()[_reader.getIntData()]));
+                break;
+            case SimGlobals.ACTIVATE_BRAKE:
+            case SimGlobals.DEACTIVATE_BRAKE:
+                Engine.getMessagePump().sendMessage(new Message(name));
+                break;
+            case SimGlobals.SET_PRESSURE:
+                Engine.getMessagePump().sendMessage(new Message(SimGlobals.SET_PRESSURE, _reader.getDoubleData()));
+                break;
+            default:
+                return; // Not an input to the car
+        }
+        ++_numInputs;
+        _lastInput = name;
+        _lastInputStep = step;
+    }
+
+    private boolean _compare(long step, String name, double[] expected, int numExpected, double[] actual, int numActual)
+    {
+        for (int i = 0; i < Math.max(numExpected, numActual); ++i)
+        {
+            if (i >= numExpected)
+            {
+                return _diverged(step, name, Double.NaN, actual[i], "(not in the recording)");
+            }
+            if (i >= numActual)
+            {
+                return _diverged(step, name, expected[i], Double.NaN, "(missing from the replay)");
+            }
+            if (Double.doubleToRawLongBits(expected[i]) != Double.doubleToRawLongBits(actual[i]))
+            {
+                return _diverged(step, name, expected[i], actual[i], "");
+            }
+        }
+        return true;
+    }
+
+    private boolean _diverged(long step, String what, double expected, double actual, String note)
+    {
+        System.out.println("ReplayDriver: first divergence at step " + step + " (" +
+                String.format("%.4f", _engine.getSimulatedSeconds()) + "s): " + what + " recorded " + expected +
+                " [" + Long.toHexString(Double.doubleToRawLongBits(expected)) + "] but replayed " + actual +
+                " [" + Long.toHexString(Double.doubleToRawLongBits(actual)) + "] " + note);
+        System.out.println("ReplayDriver: last input before it was " + _lastInput + " at step " + _lastInputStep);
+        return false;
+    }
+
+    private static double[] _append(double[] values, int index, double value)
+    {
+        if (index >= values.length) values = Arrays.copyOf(values, values.length * 2);
+        values[index] = value;
+        return values;
+    }
+
+    @Override
+    public void handleMessage(Message message)
+    {
+        if (message.getMessageName().equals(SimGlobals.SPEED)) _speeds = _append(_speeds, _numSpeeds++, message.getDoubleData());
+        else _jerks = _append(_jerks, _numJerks++, message.getDoubleData());
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: java simulation.ReplayDriver <session log> [+name=value ...]");
+            System.exit(2);
+        }
+        SessionReader reader = new SessionReader(args[0]);
+        String[] engineArgs = Arrays.copyOfRange(args, 0, args.length);
+        engineArgs[0] = "+" + SimGlobals.SIM_REPLAY + "=true";
+        Engine engine = Engine.initHeadless(engineArgs);
+        boolean matched = new ReplayDriver(engine, reader).run();
+        engine.shutdown();
+        System.exit(matched ? 0 : 1);
+    }
+}
@@ -0,0 +1,278 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a captured session to disk for offline analysis. The columns are
+ * snapshots of TimeSeries (see TimeSeries.snapshot), so they are taken in no
+ * time on the engine thread and written out on a background thread while the
+ * simulation carries on - the simulation never waits for the disk.
+ *
+ * The binary file is column oriented, so a single column can be read (or
+ * memory mapped) without going through the rest. Every number is little endian:
+ *
+ *     "EHBSTATS" (8 ASCII bytes), version (int), number of columns (int), number of rows (long)
+ *     for each column: type (byte - 0 is a double, 1 is a signed byte), name length (short),
+ *                      name (UTF-8)
+ *     for each column: its value on every row, one after the other
+ *
+ * The CSV file holds the same rows with a header line of the column names.
+ * Both are streamed through a large direct buffer, so each file costs a handful
+ * of writes however many rows it has.
+ */
+class SessionExporter
+{
+    static final byte FLOAT64 = 0;
+    static final byte INT8 = 1;
+    private static final byte[] MAGIC = "EHBSTATS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int ROWS_PER_BATCH = 1 << 13; // Rows gathered from the columns at a time
+    // Exports are queued up behind each other rather than fighting over the disk.
+    private static ExecutorService _writer;
+
+    /**
+     * Turns a sample value into what is written for a byte column
+     */
+    interface ByteColumn
+    {
+        byte toByte(double value);
+    }
+
+    private final List<Column> _columns = new ArrayList<>();
+    private final ByteBuffer _buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final double[] _doubles = new double[ROWS_PER_BATCH];
+
+    /**
+     * Adds a column holding the times of the rows
+     */
+    void addTimeColumn(String name, TimeSeries.Snapshot samples)
+    {
+        _columns.add(new Column(name, samples, Column.TIME, null));
+    }
+
+    /**
+     * Adds a column holding one of the values of the rows as doubles
+     * @param index which value (see TimeSeries.set)
+     */
+    void addColumn(String name, TimeSeries.Snapshot samples, int index)
+    {
+        _columns.add(new Column(name, samples, index, null));
+    }
+
+    /**
+     * Adds a column holding one of the values of the rows as bytes
+     * @param index which value (see TimeSeries.set)
+     */
+    void addColumn(String name, TimeSeries.Snapshot samples, int index, ByteColumn toByte)
+    {
+        _columns.add(new Column(name, samples, index, toByte));
+    }
+
+    /**
+     * Starts writing the columns on the exporter thread - this exporter must not
+     * be used again once it has been called.
+     *
+     * @param binaryPath file to write the binary form to
+     * @param csvPath file to write the CSV form to, or null for none
+     * @return finishes with the number of rows written once both files are
+     *         closed, or with an UncheckedIOException if either could not be written
+     */
+    Future<Integer> export(Path binaryPath, Path csvPath)
+    {
+        int numRows = _columns.isEmpty() ? 0 : _columns.get(0).samples.size();
+        for (Column column : _columns)
+        {
+            if (column.samples.size() != numRows)
+            {
+                throw new IllegalArgumentException("Column " + column.name + " has " + column.samples.size() +
+                        " rows rather than " + numRows);
+            }
+        }
+        return _getWriter().submit(() -> {
+            long startNS = System.nanoTime();
+            _writeBinary(binaryPath, numRows);
+            if (csvPath != null) _writeCsv(csvPath, numRows);
+            System.out.println(String.format("Stats: exported %d rows to %s%s in %.1f ms", numRows, binaryPath,
+                    csvPath == null ? "" : " and " + csvPath, (System.nanoTime() - startNS) / 1e6));
+            return numRows;
+        });
+    }
+
+    private static synchronized ExecutorService _getWriter()
+    {
+        if (_writer == null)
+        {
+            _writer = Executors.newSingleThreadExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "Stats exporter");
+                thread.setDaemon(true); // Never keeps the application alive
+                return thread;
+            });
+        }
+        return _writer;
+    }
+
+    private void _writeBinary(Path path, int numRows)
+    {
+        try (FileChannel channel = _open(path))
+        {
+            _buffer.clear();
+            _buffer.put(MAGIC);
+            _buffer.putInt(VERSION);
+            _buffer.putInt(_columns.size());
+            _buffer.putLong(numRows);
+            for (Column column : _columns)
+            {
+                byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+                _reserve(channel, 3 + name.length);
+                _buffer.put(column.toByte == null ? FLOAT64 : INT8);
+                _buffer.putShort((short)name.length);
+                _buffer.put(name);
+            }
+            for (Column column : _columns)
+            {
+                for (int row = 0; row < numRows; row += ROWS_PER_BATCH)
+                {
+                    int count = Math.min(ROWS_PER_BATCH, numRows - row);
+                    column.copy(row, _doubles, count);
+                    if (column.toByte == null) _putDoubles(channel, count);
+                    else _putBytes(channel, column.toByte, count);
+                }
+            }
+            _flush(channel);
+        }
+        catch (IOException e)
+        {
+            throw _failed(path, e);
+        }
+    }
+
+    private void _writeCsv(Path path, int numRows)
+    {
+        double[][] batch = new double[_columns.size()][ROWS_PER_BATCH];
+        StringBuilder line = new StringBuilder(256);
+        try (FileChannel channel = _open(path))
+        {
+            _buffer.clear();
+            for (Column column : _columns)
+            {
+                if (line.length() > 0) line.append(',');
+                line.append(column.name);
+            }
+            _putLine(channel, line);
+            for (int row = 0; row < numRows; row += ROWS_PER_BATCH)
+            {
+                int count = Math.min(ROWS_PER_BATCH, numRows - row);
+                for (int i = 0; i < _columns.size(); ++i) _columns.get(i).copy(row, batch[i], count);
+                for (int j = 0; j < count; ++j)
+                {
+                    line.setLength(0);
+                    for (int i = 0; i < _columns.size(); ++i)
+                    {
+                        if (i > 0) line.append(',');
+                        ByteColumn toByte = _columns.get(i).toByte;
+                        if (toByte == null) line.append(batch[i][j]);
+                        else line.append(toByte.toByte(batch[i][j]));
+                    }
+                    _putLine(channel, line);
+                }
+            }
+            _flush(channel);
+        }
+        catch (IOException e)
+        {
+            throw _failed(path, e);
+        }
+    }
+
+    private static FileChannel _open(Path path) throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    private static UncheckedIOException _failed(Path path, IOException e)
+    {
+        System.err.println("WARNING: Unable to export stats to " + path + " (" + e.getMessage() + ")");
+        return new UncheckedIOException(e);
+    }
+
+    // The first count of _doubles, as many at a time as the buffer has room for
+    private void _putDoubles(FileChannel channel, int count) throws IOException
+    {
+        int done = 0;
+        while (done < count)
+        {
+            _reserve(channel, Double.BYTES);
+            int n = Math.min(count - done, _buffer.remaining() / Double.BYTES);
+            _buffer.asDoubleBuffer().put(_doubles, done, n); // Shares _buffer's bytes and order
+            _buffer.position(_buffer.position() + n * Double.BYTES);
+            done += n;
+        }
+    }
+
+    private void _putBytes(FileChannel channel, ByteColumn toByte, int count) throws IOException
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            if (!_buffer.hasRemaining()) _flush(channel);
+            _buffer.put(toByte.toByte(_doubles[i]));
+        }
+    }
+
+    // Everything in a CSV file is ASCII
+    private void _putLine(FileChannel channel, StringBuilder line) throws IOException
+    {
+        line.append('\n');
+        _reserve(channel, line.length());
+        for (int i = 0; i < line.length(); ++i) _buffer.put((byte)line.charAt(i));
+    }
+
+    // Makes room for the given number of bytes (at most the size of the buffer)
+    private void _reserve(FileChannel channel, int bytes) throws IOException
+    {
+        if (_buffer.remaining() < bytes) _flush(channel);
+    }
+
+    private void _flush(FileChannel channel) throws IOException
+    {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) channel.write(_buffer);
+        _buffer.clear();
+    }
+
+    private static class Column
+    {
+        final String name;
+        static final int TIME = -1;
+        final TimeSeries.Snapshot samples;
+        final int index; // Value of each row, or TIME
+        final ByteColumn toByte; // null for a double column
+
+        Column(String name, TimeSeries.Snapshot samples, int index, ByteColumn toByte)
+        {
+            this.name = name;
+            this.samples = samples;
+            this.index = index;
+            this.toByte = toByte;
+        }
+
+        void copy(int from, double[] dest, int count)
+        {
+            if (index == TIME) samples.copyTimes(from, dest, count);
+            else samples.copyValues(index, from, dest, count);
+        }
+    }
+}
@@ -32,4 +32,46 @@ public class SimGlobals
     public static final String SPEED = "Speed.";
     //Jerk (m/s^3)
     public static final String JERK = "Jerk";
+    //Force (newtons) the brake applied during the last step, sent every step.
+    public static final String BRAKE_FORCE = "Brake force";
+    //1.0 when the tires lose traction and 0.0 when they regain it, sent only when it changes.
+    public static final String TRACTION_LOST = "Traction lost";
+
+    /**
+     * The following console variables script a headless run (see HeadlessScenario)
+     * in place of the GUI.
+     */
+    //Speed (MPH) the car starts at.
+    public static final String SIM_START_SPEED = "sim_start_speed";
+    //Gear the car starts in (P, R, N or D).
+    public static final String SIM_START_GEAR = "sim_start_gear";
+    //Seconds after the start at which the hand brake button is pressed (negative means never).
+    public static final String SIM_BRAKE_TIME = "sim_brake_time";
+
+    //Milliseconds EHB.update() is given each step before the simulation moves on without it.
+    public static final String SIM_EHB_DEADLINE_MS = "sim_ehb_deadline_ms";
+
+    //If true (the default) the Reset button puts the car and world back in place instead of
+    //having the engine rebuild everything with a soft reset.
+    public static final String SIM_WARM_RESET = "sim_warm_reset";
+
+    //Set by ReplayDriver - the recorded inputs and brake pressures drive the car instead of
+    //HeadlessScenario and the EHB.
+    public static final String SIM_REPLAY = "sim_replay";
+
+    //Where the Export button of the stats popup writes the session (see SessionExporter) - the
+    //binary file gets .stats added to it and the CSV file .csv. A headless run exports when it
+    //finishes if this is set, and it is empty (off) by default when headless.
+    public static final String SIM_EXPORT_PATH = "sim_export_path";
+    //If true a CSV file is written as well as the binary one.
+    public static final String SIM_EXPORT_CSV = "sim_export_csv";
+
+    /**
+     * Settings read by SweepRunner (see its documentation for the formats).
+     */
+    public static final String SWEEP_SPEEDS = "sweep_speeds";
+    public static final String SWEEP_GEARS = "sweep_gears";
+    public static final String SWEEP_PROFILES = "sweep_profiles";
+    public static final String SWEEP_THREADS = "sweep_threads";
+    public static final String SWEEP_MAX_SECONDS = "sweep_max_seconds";
 }
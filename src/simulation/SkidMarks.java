@@ -0,0 +1,42 @@
+package simulation;
+
+import simulation.engine.DecalLayer;
+
+/**
+ * Tire track animations. The car paints a track onto the world every step it
+ * has lost traction, and the most recent tracks are kept in a decal layer so a
+ * long skid costs nothing beyond the layer itself.
+ */
+class SkidMarks extends DecalLayer
+{
+    // Enough to cover the screen with tracks even at low speed
+    private static final int CAPACITY = 512;
+    private static final double TRACK_SIZE = 50;
+
+    // Toggles images for each swerve track added to the world.
+    private int _swerveToggle = 0;
+
+    SkidMarks()
+    {
+        super(CAPACITY, 1);
+    }
+
+    /**
+     * Paint a tire track onto the world.
+     *
+     * @param x world coordinate.
+     * @param y world coordinate.
+     * @param tractionLossLevel 1 for straight tracks, 2 for swerving ones
+     */
+    void addTrack(double x, double y, int tractionLossLevel)
+    {
+        String texture = "resources/img/car/tiretrack.png";
+        if(tractionLossLevel==2)
+        {
+            if(_swerveToggle%2==0) texture = "resources/img/car/swerveLeft.png";
+            else texture = "resources/img/car/swerveRight.png";
+            _swerveToggle++;
+        }
+        addDecal(x, y, TRACK_SIZE, TRACK_SIZE, texture);
+    }
+}
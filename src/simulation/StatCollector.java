@@ -1,105 +1,285 @@
 package simulation;
 
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Future;
+import javafx.collections.ObservableList;
 import javafx.scene.chart.XYChart;
 
-import interfaces.SpeedInterface;
+import interfaces.GearInterface;
+import interfaces.GearTypes;
+
 import simulation.engine.Engine;
 import simulation.engine.Message;
 import simulation.engine.MessageHandler;
-import simulation.engine.Pulsar;
+import simulation.engine.PulseEntity;
+import simulation.engine.Singleton;
 
 
 /**
  * Class that collects statistics when the simulation is running to be
  * displayed on the stats panel.
+ *
+ * Speed, pressure, jerk and brake force are captured on every step the car
+ * takes (jerk is NaN unless braking, which is when the car reports it) along
+ * with the gear, the hand brake and whether traction is lost, and the whole
+ * session is kept (see TimeSeries) so it can be exported (see
+ * SessionExporter). Each quantity is also summarized over windows of every
+ * deltaX seconds (see StreamingStats): the graphs show the mean, the peak,
+ * the 99th percentile and the standard deviation of each window, so short
+ * spikes in jerk are not averaged away and a single spike can be told apart
+ * from a window that is rough throughout. Capturing a step never allocates
+ * anything.
+ *
+ * A graph covers the whole session. Each one is shrunk to a chart-sized number
+ * of points as its windows close (see Downsampler), so building it costs the
+ * same whether the session is a minute or hours long.
  */
-class StatCollector {
+class StatCollector implements PulseEntity {
 
+    // What is captured every step - indexes into the arrays below.
+    private static final int SPEED = 0; // m/s
+    private static final int PRESSURE = 1; // %
+    private static final int JERK = 2; // m/s^3
+    private static final int BRAKE_FORCE = 3; // N
+    private static final int NUM_QUANTITIES = 4;
+    private static final int STATE = 4; // Rest of the step, see GEAR_SHIFT
+    private static final String[] QUANTITY_NAMES = { "speed (m/s)", "pressure (%)", "jerk (m/s^3)", "brake force (N)" };
+    // Steps kept - 8 hours at 60 steps per second. The series only allocates
+    // memory as it fills up.
+    private static final int MAX_SAMPLES = 8 * 60 * 60 * 60;
+    // A graph shows at most twice this many points (see Downsampler).
+    private static final int GRAPH_BUCKETS = 250;
+    // The rest of what is captured every step is packed into one value: the gear
+    // (GearTypes ordinal + 1, 0 before one is picked) above two flags.
+    private static final int BRAKE_ACTIVE_BIT = 1;
+    private static final int TRACTION_LOST_BIT = 2;
+    private static final int GEAR_SHIFT = 2;
 
     private List<Double> _deltaXValues = Arrays.asList(1.0,10.0,30.0,60.0);
-    // Data is gathered on speed, pressure and jerk.
-    private Map<Double, LinkedList<Double>> _deltaXSpeedData = new HashMap<>();
-    private Map<Double, LinkedList<Double>> _deltaXPressureData = new HashMap<>();
-    private Map<Double, LinkedList<Double>> _deltaXJerkAverages = new HashMap<>();
-    // Jerk changes happen quickly so data points are averaged meaning
-    // we must buffer data between time intervals.
-    private LinkedList<Double> _jerkBuffer = new LinkedList<>();
+    private final TimeSeries _samples = new TimeSeries(MAX_SAMPLES, STATE + 1); // One row per step
+    private final StreamingStats[] _sessionStats = new StreamingStats[NUM_QUANTITIES];
+    // The following are indexed by [quantity][deltaX index].
+    private final StreamingStats[][] _windowStats = new StreamingStats[NUM_QUANTITIES][];
+    private final Downsampler[][] _windowMeanGraphs = new Downsampler[NUM_QUANTITIES][];
+    private final Downsampler[][] _windowPeakGraphs = new Downsampler[NUM_QUANTITIES][]; // Value furthest from 0
+    private final Downsampler[][] _windowP99Graphs = new Downsampler[NUM_QUANTITIES][];
+    private final Downsampler[][] _windowDeviationGraphs = new Downsampler[NUM_QUANTITIES][]; // Standard deviation
+    // Points of the graph being built.
+    private final double[] _graphTimes = new double[GRAPH_BUCKETS * 2];
+    private final double[] _graphValues = new double[GRAPH_BUCKETS * 2];
+    private final double[] _windowElapsed = new double[_deltaXValues.size()];
+    private double _time = 0.0; // Seconds of driving captured so far.
+    // Latest values relayed by the engine.
+    private double _speed = 0.0;
     private double _pressure = 0.0;
+    private double _jerk = 0.0;
+    private double _brakeForce = 0.0;
+    private GearTypes _gear = GearInterface.getGear();
+    private boolean _brakeActive = false;
+    private boolean _tractionLost = false;
+    private boolean _carStepped = false; // The car sends its speed every step it takes.
+    private boolean _hasJerk = false;
+    private boolean _stopped = false;
     private Helper _helper = new Helper();
     private double MS_TO_MPH = 2.23694;
-    private double _jerkInterval = 1.0;
 
     /**
-     * Initialize data structures used for storing gathered stats and spawn
-     * pulsars to collect the stats.
+     * Initialize data structures used for storing gathered stats and start
+     * capturing them every step.
      */
      StatCollector() {
+        Engine.getMessagePump().signalInterest(SimGlobals.SPEED, _helper);
         Engine.getMessagePump().signalInterest(SimGlobals.SET_PRESSURE, _helper);
         Engine.getMessagePump().signalInterest(SimGlobals.JERK, _helper);
+        Engine.getMessagePump().signalInterest(SimGlobals.BRAKE_FORCE, _helper);
+        Engine.getMessagePump().signalInterest(SimGlobals.GEAR_CHANGE, _helper);
+        Engine.getMessagePump().signalInterest(SimGlobals.ACTIVATE_BRAKE, _helper);
+        Engine.getMessagePump().signalInterest(SimGlobals.DEACTIVATE_BRAKE, _helper);
+        Engine.getMessagePump().signalInterest(SimGlobals.TRACTION_LOST, _helper);
         // Initialize data containers.
-        for (double deltaX : _deltaXValues) {
-            _deltaXPressureData.put(deltaX, new LinkedList<>());
-            _deltaXSpeedData.put(deltaX, new LinkedList<>());
+        int numWindows = _deltaXValues.size();
+        for (int quantity = 0; quantity < NUM_QUANTITIES; ++quantity) {
+            _sessionStats[quantity] = new StreamingStats();
+            _windowStats[quantity] = new StreamingStats[numWindows];
+            _windowMeanGraphs[quantity] = new Downsampler[numWindows];
+            _windowPeakGraphs[quantity] = new Downsampler[numWindows];
+            _windowP99Graphs[quantity] = new Downsampler[numWindows];
+            _windowDeviationGraphs[quantity] = new Downsampler[numWindows];
+            for (int window = 0; window < numWindows; ++window) {
+                _windowStats[quantity][window] = new StreamingStats();
+                _windowMeanGraphs[quantity][window] = new Downsampler(GRAPH_BUCKETS);
+                _windowPeakGraphs[quantity][window] = new Downsampler(GRAPH_BUCKETS);
+                _windowP99Graphs[quantity][window] = new Downsampler(GRAPH_BUCKETS);
+                _windowDeviationGraphs[quantity][window] = new Downsampler(GRAPH_BUCKETS);
+            }
         }
-        _deltaXJerkAverages.put(_jerkInterval, new LinkedList<>());
-
-        // Generate Pulsars to get data from the engine.
-        new Pulsar(1.0, () -> _updateData(1.0)).start();
-        new Pulsar(10.0, () -> _updateData(10.0)).start();
+        Engine.getMessagePump().sendMessage(new Message(Singleton.ADD_PULSE_ENTITY, this));
+    }
 
+    /**
+     * Stops gathering stats and prints a summary of the session - what was
+     * gathered so far can still be mapped and exported.
+     */
+    void stop()
+    {
+        if (_stopped) return;
+        _stopped = true;
+        Engine.getMessagePump().removeInterest(SimGlobals.SPEED, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.SET_PRESSURE, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.JERK, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.BRAKE_FORCE, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.GEAR_CHANGE, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.ACTIVATE_BRAKE, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.DEACTIVATE_BRAKE, _helper);
+        Engine.getMessagePump().removeInterest(SimGlobals.TRACTION_LOST, _helper);
+        Engine.getMessagePump().sendMessage(new Message(Singleton.REMOVE_PULSE_ENTITY, this));
+        System.out.println(String.format("Stats: %.1f seconds captured", _time));
+        for (int quantity = 0; quantity < NUM_QUANTITIES; ++quantity) {
+            System.out.println("    " + QUANTITY_NAMES[quantity] + ": " + _sessionStats[quantity].summary());
+        }
     }
 
-    // Data update method called by Pulsar engine callbacks.
-    private void _updateData(double deltaX)
+    /**
+     * Captures whatever the car reported during its last step.
+     */
+    @Override
+    public void pulse(double deltaSeconds)
     {
-        // Only allow 20 data points max on a graph to reduce clutter.
-        if(_deltaXSpeedData.get(deltaX).size() >= 20) _deltaXSpeedData.get(deltaX).pop();
-        if(_deltaXPressureData.get(deltaX).size() >= 20) _deltaXPressureData.get(deltaX).pop();
-        // Average all jerk data to form this pulses data point.
-        if(deltaX == _jerkInterval) {
-            if (_deltaXJerkAverages.get(deltaX).size() >= 20) _deltaXJerkAverages.get(deltaX).pop();
-            int nJerkPoints = _jerkBuffer.size();
-            if(nJerkPoints > 0) {
-                double jerkAvg = _jerkBuffer.stream().mapToDouble(Double::doubleValue).sum() / nJerkPoints;
-                _deltaXJerkAverages.get(deltaX).add(jerkAvg);
-                _jerkBuffer.clear();
+        if (!_carStepped) return; // Nothing is moving.
+        _carStepped = false;
+        _time += deltaSeconds;
+        _samples.add(_time);
+        _capture(SPEED, _speed);
+        _capture(PRESSURE, _pressure); // Not available through the interfaces.
+        _capture(BRAKE_FORCE, _brakeForce);
+        _capture(JERK, _hasJerk ? _jerk : Double.NaN); // The stats leave NaN out.
+        _hasJerk = false;
+        int state = (_gear == null ? 0 : _gear.ordinal() + 1) << GEAR_SHIFT;
+        if (_brakeActive) state |= BRAKE_ACTIVE_BIT;
+        if (_tractionLost) state |= TRACTION_LOST_BIT;
+        _samples.set(STATE, state);
+        for (int window = 0; window < _windowElapsed.length; ++window) {
+            _windowElapsed[window] += deltaSeconds;
+            // Allow for rounding so a window is always a whole number of steps.
+            if (_windowElapsed[window] + deltaSeconds / 2 >= _deltaXValues.get(window)) {
+                _closeWindow(window);
+                _windowElapsed[window] = 0.0;
             }
         }
-        _deltaXSpeedData.get(deltaX).add(SpeedInterface.getSpeed());
-        _deltaXPressureData.get(deltaX).add(_pressure); // Not available through the interfaces.
+    }
+
+    private void _capture(int quantity, double value)
+    {
+        _samples.set(quantity, value);
+        _sessionStats[quantity].add(value);
+        for (StreamingStats stats : _windowStats[quantity]) stats.add(value);
+    }
+
+    // Add each window's summary to the graphs and start the next window.
+    private void _closeWindow(int window)
+    {
+        for (int quantity = 0; quantity < NUM_QUANTITIES; ++quantity) {
+            StreamingStats stats = _windowStats[quantity][window];
+            if (stats.getCount() == 0) continue; // No jerk unless braking.
+            double peak = Math.abs(stats.getMax()) >= Math.abs(stats.getMin()) ? stats.getMax() : stats.getMin();
+            _windowMeanGraphs[quantity][window].add(_time, stats.getMean());
+            _windowPeakGraphs[quantity][window].add(_time, peak);
+            // Like the peak, the 99th percentile is taken on the side furthest from 0
+            double high = stats.getPercentile(99);
+            double low = stats.getPercentile(1);
+            _windowP99Graphs[quantity][window].add(_time, Math.abs(high) >= Math.abs(low) ? high : low);
+            _windowDeviationGraphs[quantity][window].add(_time, stats.getStandardDeviation());
+            stats.clear();
+        }
     }
 
     /**
-     * Build XYChart.Series with relevant data since a request
-     * is being made.
+     * Export every step captured so far. This only takes a snapshot of the
+     * session (see TimeSeries.snapshot) and the files are written on the
+     * exporter thread, so it does not hold up the simulation however long the
+     * session is. It must be called on the engine thread.
      *
+     * @param path the binary file is written to this + ".stats" and the CSV file to this + ".csv"
+     * @param withCsv whether to write the CSV file
+     * @return finishes with the number of steps written (see SessionExporter.export)
+     */
+    Future<Integer> export(String path, boolean withCsv)
+    {
+        SessionExporter exporter = new SessionExporter();
+        TimeSeries.Snapshot samples = _samples.snapshot();
+        exporter.addTimeColumn("time (s)", samples);
+        for (int quantity = 0; quantity < NUM_QUANTITIES; ++quantity) {
+            exporter.addColumn(QUANTITY_NAMES[quantity], samples, quantity);
+        }
+        exporter.addColumn("gear", samples, STATE, (state) -> (byte)(((int)state >> GEAR_SHIFT) - 1)); // -1 for none
+        exporter.addColumn("brake active", samples, STATE, (state) -> (byte)((int)state & BRAKE_ACTIVE_BIT));
+        exporter.addColumn("traction lost", samples, STATE, (state) -> (byte)(((int)state & TRACTION_LOST_BIT) >> 1));
+        return exporter.export(Paths.get(path + ".stats"), withCsv ? Paths.get(path + ".csv") : null);
+    }
+
+    /**
+     * Bring a chart's series up to date with the relevant data. The whole
+     * session is included but it is already shrunk to at most
+     * 2 * GRAPH_BUCKETS points, so this costs the same however long the
+     * session has been. The points already in the series are reused and
+     * only the ones whose values changed are touched, so it is cheap to
+     * call over and over while the simulation runs.
+     *
+     * @param series series to update - X is seconds, Y depends on the graph type
      * @param deltaX for grahp
      * @param gt GraphTypes
-     * @return XYChart.Series data to be plotted on Line chart.
      */
-    XYChart.Series mapToSeries(double deltaX, GraphTypes gt)
+    void updateSeries(XYChart.Series<Number, Number> series, double deltaX, GraphTypes gt)
     {
-        LinkedList<Double> rawData;
+        int window = _deltaXValues.indexOf(deltaX);
+        Downsampler graph;
+        double scale = 1.0;
         switch (gt)
         {
             case SPEED_VS_TIME:
-                rawData = _deltaXSpeedData.get(deltaX).stream().map(s -> s*MS_TO_MPH).collect(Collectors.toCollection(LinkedList::new));
+                graph = _windowMeanGraphs[SPEED][window];
+                scale = MS_TO_MPH;
                 break;
             case PRESSURE_VS_TIME:
-                rawData = _deltaXPressureData.get(deltaX);
+                graph = _windowMeanGraphs[PRESSURE][window];
                 break;
             case JERK_AVG_VS_TIME:
-                rawData = _deltaXJerkAverages.get(deltaX);
+                graph = _windowMeanGraphs[JERK][window];
+                break;
+            case JERK_PEAK_VS_TIME:
+                graph = _windowPeakGraphs[JERK][window];
+                break;
+            case JERK_P99_VS_TIME:
+                graph = _windowP99Graphs[JERK][window];
+                break;
+            case JERK_DEVIATION_VS_TIME:
+                graph = _windowDeviationGraphs[JERK][window];
                 break;
             default:
-                    rawData = new LinkedList<>();
+                    graph = null;
                     break;
         }
-        XYChart.Series series = new XYChart.Series();
-        for(int i = 0; i < rawData.size(); i++) series.getData().add(new XYChart.Data((i+1)*deltaX+"", rawData.get(i)));
-        return series;
+        int numPoints = graph == null ? 0 : graph.getPoints(_graphTimes, _graphValues);
+        ObservableList<XYChart.Data<Number, Number>> data = series.getData();
+        int numReused = Math.min(numPoints, data.size());
+        for(int i = 0; i < numReused; i++)
+        {
+            XYChart.Data<Number, Number> point = data.get(i);
+            double value = _graphValues[i]*scale;
+            if(point.getXValue().doubleValue() != _graphTimes[i]) point.setXValue(_graphTimes[i]);
+            if(point.getYValue().doubleValue() != value) point.setYValue(value);
+        }
+        if(numPoints < data.size())
+        {
+            data.remove(numPoints, data.size());
+        }
+        else if(numPoints > numReused)
+        {
+            ArrayList<XYChart.Data<Number, Number>> added = new ArrayList<>(numPoints - numReused);
+            for(int i = numReused; i < numPoints; i++) added.add(new XYChart.Data<>(_graphTimes[i], _graphValues[i]*scale));
+            data.addAll(added); // One change notification rather than one per point.
+        }
     }
 
     /**
@@ -109,7 +289,8 @@ class StatCollector {
     List<Double> getDeltaXValues() { return _deltaXValues; }
 
     /**
-     * Inner class to handle messages about pressure and jerk relayed from the engine.
+     * Inner class to handle messages about speed, pressure, jerk, brake
+     * force, the gear, the hand brake and traction relayed from the engine.
      */
     class Helper implements MessageHandler
     {
@@ -118,11 +299,31 @@ class StatCollector {
         {
             switch (message.getMessageName())
             {
+                case SimGlobals.SPEED:
+                    _speed = message.getDoubleData();
+                    _carStepped = true;
+                    break;
                 case SimGlobals.SET_PRESSURE:
-                    _pressure = (Double) message.getMessageData();
+                    _pressure = message.getDoubleData();
                     break;
                 case SimGlobals.JERK:
-                    _jerkBuffer.push((Double) message.getMessageData());
+                    _jerk = message.getDoubleData();
+                    _hasJerk = true;
+                    break;
+                case SimGlobals.BRAKE_FORCE:
+                    _brakeForce = message.getDoubleData();
+                    break;
+                case SimGlobals.GEAR_CHANGE:
+                    _gear = (GearTypes)message.getMessageData();
+                    break;
+                case SimGlobals.ACTIVATE_BRAKE:
+                    _brakeActive = true;
+                    break;
+                case SimGlobals.DEACTIVATE_BRAKE:
+                    _brakeActive = false;
+                    break;
+                case SimGlobals.TRACTION_LOST:
+                    _tractionLost = message.getDoubleData() != 0.0;
                     break;
             }
         }
@@ -1,8 +1,9 @@
 package simulation;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.scene.chart.CategoryAxis;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
@@ -13,11 +14,22 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import simulation.engine.Engine;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * FXML Controller class for the statistics popup.
+ *
+ * The graph on display follows the simulation while the popup is up: a few
+ * times a second the points gathered since the last refresh are streamed into
+ * the chart's one series (see StatCollector.updateSeries) rather than the
+ * series being rebuilt.
+ *
+ * The Export button writes the whole session to sim_export_path (see
+ * StatCollector.export) while the simulation carries on.
  */
 public class StatsPopupController
 {
@@ -30,17 +42,26 @@ public class StatsPopupController
     @FXML
     private Button _rightButton;
     @FXML
+    private Button _exportButton;
+    @FXML
     private Label _title;
-    private CategoryAxis _xAxis = new CategoryAxis();
+    // How often the graph on display is brought up to date.
+    private static final double REFRESH_SECONDS = 0.5;
+    private NumberAxis _xAxis = new NumberAxis();
     private NumberAxis _yAxis = new NumberAxis();
-    // Same instance of chart is used for each graph and data is cycled in and out.
-    private LineChart<String, Number> _lineChart =
-            new LineChart<String, Number>(_xAxis, _yAxis);
+    // Same instance of chart and series is used for each graph and data is cycled in and out.
+    private LineChart<Number, Number> _lineChart =
+            new LineChart<Number, Number>(_xAxis, _yAxis);
+    private XYChart.Series<Number, Number> _series = new XYChart.Series<>();
+    private Timeline _refresher;
+    private GraphTypes _graphType;
+    private double _deltaX;
     private Map<Double, String> _timeIntervalLabels = new HashMap<>();
     // Total number of charts/graphs.
-    private int _nCharts = 5;
+    private int _nCharts = 8;
     private int _currentChart = 0;
     private StatCollector _stats;
+    private Future<Integer> _export; // The one being written, if any
 
     // Get resources.
     private ImageView _left = new ImageView(
@@ -66,9 +87,29 @@ public class StatsPopupController
         _lineChart.setLayoutX(30.0);
         _lineChart.setLayoutY(30.0);
         _lineChart.setLegendVisible(false);
+        // Animating every refresh would cost more than the refresh itself and there
+        // are too many points for a symbol on each.
+        _lineChart.setAnimated(false);
+        _lineChart.setCreateSymbols(false);
+        _lineChart.getData().add(_series);
+        _xAxis.setLabel("Time (s)");
+        _xAxis.setForceZeroInRange(false);
         _stats = stats;
         for (double deltaX : _stats.getDeltaXValues()) _timeIntervalLabels.put(deltaX, "(" + deltaX + " Second Intervals)");
         displayNewGraph();
+        _refresher = new Timeline(new KeyFrame(Duration.seconds(REFRESH_SECONDS), (event) -> _refresh()));
+        _refresher.setCycleCount(Timeline.INDEFINITE);
+        _refresher.play();
+    }
+
+    /**
+     * Follow a new StatCollector (a new run was started while the popup is up).
+     * @param stats StatsCollector instance.
+     */
+    void setStats(StatCollector stats)
+    {
+        _stats = stats;
+        _refresh();
     }
 
     /**
@@ -78,10 +119,26 @@ public class StatsPopupController
     @FXML
     public void exit(ActionEvent event) {
         isUp = false;
+        _refresher.stop();
         Stage stage = (Stage) _exitButton.getScene().getWindow();
         stage.close();
     }
 
+    /**
+     * On click event for the export button.
+     * @param event
+     */
+    @FXML
+    public void export(ActionEvent event) {
+        String path = Engine.getConsoleVariables().find(SimGlobals.SIM_EXPORT_PATH).getcvarValue();
+        if (path.isEmpty()) return;
+        boolean withCsv = Engine.getConsoleVariables().find(SimGlobals.SIM_EXPORT_CSV).getcvarAsBool();
+        _export = _stats.export(path, withCsv);
+        // Given back by _refresh once the files are written.
+        _exportButton.setDisable(true);
+        _exportButton.setText("Exporting...");
+    }
+
     // Update the left and right buttons visible as applicable.
     private void updateButtonVisibility()
     {
@@ -92,7 +149,7 @@ public class StatsPopupController
         {
             _leftButton.setVisible(true);
         }
-        if (_title.getText().equals("Jerk Avg vs Time (1.0 Second Intervals)"))
+        if (_title.getText().equals("Jerk SD vs Time (1.0 Second Intervals)"))
         {
             _rightButton.setVisible(false);
         } else
@@ -124,43 +181,63 @@ public class StatsPopupController
     // StatCollector and update other appropriate fields.
     private void displayNewGraph()
     {
-        _lineChart.getData().clear();
-        GraphTypes gt;
-        if(_currentChart <= 1) gt = GraphTypes.SPEED_VS_TIME;
-        else if(_currentChart == _nCharts-1) gt = GraphTypes.JERK_AVG_VS_TIME;
-        else gt = GraphTypes.PRESSURE_VS_TIME;
+        if(_currentChart <= 1) _graphType = GraphTypes.SPEED_VS_TIME;
+        else if(_currentChart == _nCharts-1) _graphType = GraphTypes.JERK_DEVIATION_VS_TIME;
+        else if(_currentChart == _nCharts-2) _graphType = GraphTypes.JERK_P99_VS_TIME;
+        else if(_currentChart == _nCharts-3) _graphType = GraphTypes.JERK_PEAK_VS_TIME;
+        else if(_currentChart == _nCharts-4) _graphType = GraphTypes.JERK_AVG_VS_TIME;
+        else _graphType = GraphTypes.PRESSURE_VS_TIME;
         String yTitle = "";
         String graphTitle = "";
-        XYChart.Series graphData = new XYChart.Series();
-        double deltaX;
         //  Graph data depends on the type.
-        switch(gt)
+        switch(_graphType)
         {
             case SPEED_VS_TIME:
-                deltaX = _stats.getDeltaXValues().get(_currentChart);
+                _deltaX = _stats.getDeltaXValues().get(_currentChart);
                 yTitle = "Speed (MPH)";
-                graphTitle = "Speed vs Time " + _timeIntervalLabels.get(deltaX);
-                graphData = _stats.mapToSeries(deltaX, GraphTypes.SPEED_VS_TIME);
+                graphTitle = "Speed vs Time " + _timeIntervalLabels.get(_deltaX);
                 break;
             case PRESSURE_VS_TIME:
-                deltaX = _stats.getDeltaXValues().get(_currentChart-2);
+                _deltaX = _stats.getDeltaXValues().get(_currentChart-2);
                 yTitle = "Pressure %";
-                graphTitle = "Pressure vs Time " + _timeIntervalLabels.get(deltaX);
-                graphData = _stats.mapToSeries(deltaX, GraphTypes.PRESSURE_VS_TIME);
+                graphTitle = "Pressure vs Time " + _timeIntervalLabels.get(_deltaX);
                 break;
             case JERK_AVG_VS_TIME:
-                deltaX = _stats.getDeltaXValues().get(0);
+                _deltaX = _stats.getDeltaXValues().get(0);
                 yTitle = "Jerk Average (m/s^3)";
-                graphTitle = "Jerk Avg vs Time " + _timeIntervalLabels.get(deltaX);
-                graphData = _stats.mapToSeries(deltaX, GraphTypes.JERK_AVG_VS_TIME);
+                graphTitle = "Jerk Avg vs Time " + _timeIntervalLabels.get(_deltaX);
+                break;
+            case JERK_PEAK_VS_TIME:
+                _deltaX = _stats.getDeltaXValues().get(0);
+                yTitle = "Jerk Peak (m/s^3)";
+                graphTitle = "Jerk Peak vs Time " + _timeIntervalLabels.get(_deltaX);
+                break;
+            case JERK_P99_VS_TIME:
+                _deltaX = _stats.getDeltaXValues().get(0);
+                yTitle = "Jerk 99th Percentile (m/s^3)";
+                graphTitle = "Jerk P99 vs Time " + _timeIntervalLabels.get(_deltaX);
+                break;
+            case JERK_DEVIATION_VS_TIME:
+                _deltaX = _stats.getDeltaXValues().get(0);
+                yTitle = "Jerk Standard Deviation (m/s^3)";
+                graphTitle = "Jerk SD vs Time " + _timeIntervalLabels.get(_deltaX);
                 break;
         }
-        _xAxis.setTickLabelsVisible(false); // The ticks on the X-Axis do not resize to real time updates well.. so disable their visibility.
-        _xAxis.setOpacity(0);
         _yAxis.setLabel(yTitle);
         _title.setText(graphTitle);
-        _lineChart.getData().setAll(graphData);
+        _refresh();
+    }
 
+    // Stream whatever changed since the last refresh into the graph on display.
+    private void _refresh()
+    {
+        _stats.updateSeries(_series, _deltaX, _graphType);
+        if (_export != null && _export.isDone())
+        {
+            _export = null;
+            _exportButton.setText("Export");
+            _exportButton.setDisable(false);
+        }
     }
 
 
@@ -0,0 +1,110 @@
+package simulation;
+
+/**
+ * Running summary of a stream of values: count, min, max, mean and variance
+ * (kept with Welford's method so it stays accurate over long runs) plus a
+ * LogHistogram for percentiles. Adding a value costs the same however many
+ * came before it and never allocates.
+ *
+ * Only one thread may use it.
+ */
+class StreamingStats
+{
+    private final LogHistogram _histogram = new LogHistogram();
+    private long _count = 0;
+    private double _min = 0.0;
+    private double _max = 0.0;
+    private double _mean = 0.0;
+    private double _sumOfSquaredDifferences = 0.0; // From the mean, so variance = this / count
+
+    /**
+     * Adds a value to the summary (NaN is ignored)
+     */
+    void add(double value)
+    {
+        if (Double.isNaN(value)) return;
+        if (_count == 0)
+        {
+            _min = value;
+            _max = value;
+        }
+        else
+        {
+            if (value < _min) _min = value;
+            if (value > _max) _max = value;
+        }
+        ++_count;
+        double difference = value - _mean;
+        _mean += difference / _count;
+        _sumOfSquaredDifferences += difference * (value - _mean);
+        _histogram.record(value);
+    }
+
+    /**
+     * Forgets every value added so far
+     */
+    void clear()
+    {
+        _count = 0;
+        _min = 0.0;
+        _max = 0.0;
+        _mean = 0.0;
+        _sumOfSquaredDifferences = 0.0;
+        _histogram.clear();
+    }
+
+    long getCount()
+    {
+        return _count;
+    }
+
+    /*
+     * Each of the following is 0 if nothing has been added
+     */
+    double getMin()
+    {
+        return _min;
+    }
+
+    double getMax()
+    {
+        return _max;
+    }
+
+    double getMean()
+    {
+        return _mean;
+    }
+
+    /**
+     * @return variance of the values added (not of a sample drawn from them)
+     */
+    double getVariance()
+    {
+        return _count == 0 ? 0.0 : _sumOfSquaredDifferences / _count;
+    }
+
+    double getStandardDeviation()
+    {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @param percentile value on the range [0.0, 100.0]
+     * @return value which the given percentage of added values do not exceed (within 12.5%)
+     */
+    double getPercentile(double percentile)
+    {
+        if (_count == 0) return 0.0;
+        return Math.max(_min, Math.min(_max, _histogram.getPercentile(percentile)));
+    }
+
+    /**
+     * @return one line summary of the values
+     */
+    String summary()
+    {
+        return String.format("n %d, mean %.3f, sd %.3f, min %.3f, p50 %.3f, p99 %.3f, max %.3f", _count, _mean,
+                getStandardDeviation(), _min, getPercentile(50), getPercentile(99), _max);
+    }
+}
@@ -29,6 +29,14 @@ public class Sun extends RenderEntity
         _animationSequence.setCategory("sun");
     }
 
+    /**
+     * Start the animation over.
+     */
+    void reset()
+    {
+        _animationSequence.reset();
+    }
+
     /**
      * Update Sun's animation.
      * @param deltaSeconds Change in seconds since the last update.
@@ -0,0 +1,216 @@
+package simulation;
+
+import interfaces.GearTypes;
+import simulation.engine.ConsoleVariable;
+import simulation.engine.ConsoleVariables;
+import simulation.engine.Singleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Runs every combination of starting speed, gear and brake pressure profile
+ * through the car physics and reports how each one stopped. The hand brake is
+ * pressed at the start of every run and the profile decides the pressure from
+ * then on.
+ *
+ * Runs share nothing (each gets its own CarPhysics) so they are spread over a
+ * ForkJoinPool without any locking, and the engine, message pump and JavaFX
+ * are never started. Settings are console variables given on the command line:
+ *
+ *      sweep_speeds      MPH as "from:to:step" (default 0:140:10)
+ *      sweep_gears       comma separated, P/R/N/D (default D,N,R)
+ *      sweep_profiles    comma separated, see BrakeProfile (default constant:100,constant:50,ramp:100:1,pulse:100:0.25)
+ *      sweep_threads     worker threads (default all cores)
+ *      sweep_max_seconds simulated seconds before a run counts as not stopping (default 120)
+ *      eng_physics_hz    steps per simulated second (default 60)
+ *
+ * Example: java simulation.SweepRunner +sweep_speeds=20:140:5 +sweep_gears=D
+ */
+public class SweepRunner
+{
+    private static final double MPH_TO_MS = 0.448;
+    // Same limit the GUI puts on the starting speed
+    private static final double MAX_SPEED_MPH = 140;
+
+    /**
+     * A single combination of settings to run
+     */
+    static class Scenario
+    {
+        final double speedMPH;
+        final GearTypes gear;
+        final BrakeProfile profile;
+
+        Scenario(double speedMPH, GearTypes gear, BrakeProfile profile)
+        {
+            this.speedMPH = speedMPH;
+            this.gear = gear;
+            this.profile = profile;
+        }
+    }
+
+    /**
+     * How a scenario played out
+     */
+    static class Result
+    {
+        final Scenario scenario;
+        final boolean stopped;
+        final double stoppingSeconds;
+        final double stoppingMeters;
+        final double peakJerk;
+        final double tractionLossSeconds;
+        final long steps;
+
+        Result(Scenario scenario, boolean stopped, double stoppingSeconds, double stoppingMeters,
+               double peakJerk, double tractionLossSeconds, long steps)
+        {
+            this.scenario = scenario;
+            this.stopped = stopped;
+            this.stoppingSeconds = stoppingSeconds;
+            this.stoppingMeters = stoppingMeters;
+            this.peakJerk = peakJerk;
+            this.tractionLossSeconds = tractionLossSeconds;
+            this.steps = steps;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        ConsoleVariables cvars = new ConsoleVariables();
+        cvars.registerVariable(new ConsoleVariable(SimGlobals.SWEEP_SPEEDS, "0:140:10"));
+        cvars.registerVariable(new ConsoleVariable(SimGlobals.SWEEP_GEARS, "D,N,R"));
+        cvars.registerVariable(new ConsoleVariable(SimGlobals.SWEEP_PROFILES,
+                "constant:100,constant:50,ramp:100:1,pulse:100:0.25"));
+        cvars.registerVariable(new ConsoleVariable(SimGlobals.SWEEP_THREADS,
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        cvars.registerVariable(new ConsoleVariable(SimGlobals.SWEEP_MAX_SECONDS, "120"));
+        cvars.registerVariable(new ConsoleVariable(Singleton.ENG_PHYSICS_HZ, "60"));
+        cvars.loadCommandLine(args);
+
+        List<Scenario> scenarios = buildScenarios(cvars.find(SimGlobals.SWEEP_SPEEDS).getcvarValue(),
+                cvars.find(SimGlobals.SWEEP_GEARS).getcvarValue(),
+                cvars.find(SimGlobals.SWEEP_PROFILES).getcvarValue());
+        int threads = Math.max(1, cvars.find(SimGlobals.SWEEP_THREADS).getcvarAsInt());
+        double deltaSeconds = 1.0 / cvars.find(Singleton.ENG_PHYSICS_HZ).getcvarAsFloat();
+        double maxSeconds = cvars.find(SimGlobals.SWEEP_MAX_SECONDS).getcvarAsFloat();
+
+        System.out.println("SweepRunner: " + scenarios.size() + " runs on " + threads + " threads");
+        long startNS = System.nanoTime();
+        List<Result> results = runAll(scenarios, threads, deltaSeconds, maxSeconds);
+        double elapsedSeconds = (System.nanoTime() - startNS) / 1_000_000_000.0;
+
+        System.out.println("speed_mph,gear,profile,stopped,stopping_time_s,stopping_distance_m,peak_jerk,traction_loss_s");
+        long totalSteps = 0;
+        for (Result result : results)
+        {
+            totalSteps += result.steps;
+            System.out.println(String.format("%.1f,%s,%s,%b,%.3f,%.3f,%.3f,%.3f", result.scenario.speedMPH,
+                    result.scenario.gear, result.scenario.profile, result.stopped, result.stoppingSeconds,
+                    result.stoppingMeters, result.peakJerk, result.tractionLossSeconds));
+        }
+        System.out.println(String.format("SweepRunner: finished in %.2fs (%.0f runs/s, %.0f steps/s)",
+                elapsedSeconds, results.size() / elapsedSeconds, totalSteps / elapsedSeconds));
+    }
+
+    /**
+     * Runs every scenario and returns the results in the same order
+     */
+    static List<Result> runAll(List<Scenario> scenarios, int threads, double deltaSeconds, double maxSeconds)
+    {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            return pool.submit(() -> scenarios.parallelStream()
+                    .map((scenario) -> run(scenario, deltaSeconds, maxSeconds))
+                    .collect(Collectors.toList())).get();
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Sweep failed", e);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Drives a single car until it stops or maxSeconds of simulated time pass
+     */
+    static Result run(Scenario scenario, double deltaSeconds, double maxSeconds)
+    {
+        CarPhysics car = new CarPhysics();
+        double speed = scenario.speedMPH * MPH_TO_MS;
+        if (scenario.gear == GearTypes.REVERSE) speed *= -1;
+        car.start(speed, scenario.gear);
+        car.activateBrake();
+        double seconds = 0.0;
+        double meters = 0.0;
+        double peakJerk = 0.0;
+        double tractionLossSeconds = 0.0;
+        long steps = 0;
+        boolean stopped = car.getSpeed() == 0;
+        while (!stopped && seconds < maxSeconds)
+        {
+            car.setBrakePercentage(scenario.profile.pressureAt(seconds));
+            car.step(deltaSeconds);
+            ++steps;
+            seconds += deltaSeconds;
+            meters += Math.abs(car.getSpeed()) * deltaSeconds;
+            peakJerk = Math.max(peakJerk, Math.abs(car.getJerk()));
+            if (car.isTractionLost()) tractionLossSeconds += deltaSeconds;
+            stopped = car.getSpeed() == 0;
+        }
+        return new Result(scenario, stopped, seconds, meters, peakJerk, tractionLossSeconds, steps);
+    }
+
+    /**
+     * @param speeds MPH as "from:to:step"
+     * @param gears comma separated gear letters
+     * @param profiles comma separated brake profiles
+     * @return every combination of the three
+     */
+    static List<Scenario> buildScenarios(String speeds, String gears, String profiles)
+    {
+        String[] range = speeds.split(":");
+        double from = Double.parseDouble(range[0]);
+        double to = range.length > 1 ? Double.parseDouble(range[1]) : from;
+        double step = range.length > 2 ? Double.parseDouble(range[2]) : 1.0;
+        if (from < 0 || to > MAX_SPEED_MPH || step <= 0)
+        {
+            throw new IllegalArgumentException("Speeds must be within 0 to " + MAX_SPEED_MPH + " MPH with a positive step");
+        }
+        List<BrakeProfile> brakeProfiles = new ArrayList<>();
+        for (String profile : profiles.split(",")) brakeProfiles.add(BrakeProfile.parse(profile));
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String gear : gears.split(","))
+        {
+            GearTypes gearType = _getGear(gear.trim());
+            // Index based so rounding doesn't drop the last speed
+            long numSpeeds = (long)Math.floor((to - from) / step + 1e-9) + 1;
+            for (long i = 0; i < numSpeeds; ++i)
+            {
+                for (BrakeProfile profile : brakeProfiles) scenarios.add(new Scenario(from + i * step, gearType, profile));
+            }
+        }
+        return scenarios;
+    }
+
+    // Same mapping as the GUI's gear buttons.
+    private static GearTypes _getGear(String s)
+    {
+        switch(s)
+        {
+            case "P": return GearTypes.PARK;
+            case "R": return GearTypes.REVERSE;
+            case "N": return GearTypes.NEUTRAL;
+            case "D": return GearTypes.DRIVE;
+            default: throw new IllegalArgumentException("Unsupported gear: " + s);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package simulation;
+
+/**
+ * Rows of values sampled at the same times, kept as primitive doubles in a
+ * ring buffer: once it holds its capacity each new row replaces the oldest
+ * one. The time of a row is stored once however many values it has, so a row
+ * costs 8 bytes per value plus 8 for its time, and adding one never boxes
+ * anything - a whole multi-hour session at full frame rate fits in memory.
+ *
+ * The buffer is split into fixed-size chunks which are only allocated once
+ * rows reach them, so a series with a large capacity costs next to nothing
+ * until it fills up.
+ *
+ * Only one thread may add rows, but another thread can read what was kept at
+ * some moment through a Snapshot. Taking one costs O(chunks) rather than
+ * O(rows): it shares the chunks, and a shared chunk is only copied if the
+ * series later has to overwrite one of its rows (once it is full).
+ */
+class TimeSeries
+{
+    private static final int MAX_CHUNK_BITS = 12; // 4096 rows per chunk
+    private final int _capacity;
+    private final int _chunkBits;
+    private final int _chunkMask;
+    private final double[][] _times; // Chunks, allocated as they are first used
+    private final double[][][] _values; // [value][chunk]
+    private final boolean[] _shared; // Chunks a Snapshot may still be reading
+    private int _start = 0; // Slot holding the oldest row
+    private int _size = 0;
+    private int _newest = -1; // Slot holding the newest row
+
+    /**
+     * @param capacity most rows kept at once
+     * @param numValues values in each row
+     */
+    TimeSeries(int capacity, int numValues)
+    {
+        if (capacity < 1) throw new IllegalArgumentException("TimeSeries capacity must be at least 1");
+        _capacity = capacity;
+        _chunkBits = Math.min(MAX_CHUNK_BITS, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        _chunkMask = (1 << _chunkBits) - 1;
+        int numChunks = ((capacity - 1) >> _chunkBits) + 1;
+        _times = new double[numChunks][];
+        _values = new double[numValues][numChunks][];
+        _shared = new boolean[numChunks];
+    }
+
+    /**
+     * Adds a row, replacing the oldest one if the series is full. Its values
+     * are whatever set() is given before the next row is added.
+     * @param time when the row was sampled - never earlier than the previous row
+     */
+    void add(double time)
+    {
+        int slot;
+        int chunk;
+        if (_size < _capacity)
+        {
+            slot = _size++; // Nothing has been replaced yet, so the oldest row is in slot 0
+            chunk = slot >> _chunkBits;
+        }
+        else
+        {
+            slot = _start;
+            _start = slot + 1 == _capacity ? 0 : slot + 1;
+            chunk = slot >> _chunkBits;
+            if (_shared[chunk])
+            {
+                _times[chunk] = _times[chunk].clone();
+                for (double[][] value : _values) value[chunk] = value[chunk].clone();
+                _shared[chunk] = false;
+            }
+        }
+        if (_times[chunk] == null)
+        {
+            int chunkSize = Math.min(_chunkMask + 1, _capacity - (chunk << _chunkBits));
+            _times[chunk] = new double[chunkSize];
+            for (double[][] value : _values) value[chunk] = new double[chunkSize];
+        }
+        _times[chunk][slot & _chunkMask] = time;
+        _newest = slot;
+    }
+
+    /**
+     * Sets one of the values of the newest row
+     * @param index which value - 0 to numValues - 1
+     */
+    void set(int index, double value)
+    {
+        _values[index][_newest >> _chunkBits][_newest & _chunkMask] = value;
+    }
+
+    /**
+     * @return number of rows currently kept
+     */
+    int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @return the rows kept right now, which can be read from any thread
+     *         (once handed to it safely) while this series carries on
+     */
+    Snapshot snapshot()
+    {
+        for (int chunk = 0; chunk < _times.length; ++chunk) _shared[chunk] = _times[chunk] != null;
+        double[][][] values = new double[_values.length][][];
+        for (int value = 0; value < _values.length; ++value) values[value] = _values[value].clone();
+        return new Snapshot(_times.clone(), values, _start, _size, _capacity, _chunkBits);
+    }
+
+    /**
+     * Rows a TimeSeries held when the snapshot was taken, oldest first. The
+     * series only ever appends past them or copies a chunk before overwriting
+     * it, so they never change.
+     */
+    static class Snapshot
+    {
+        private final double[][] _times;
+        private final double[][][] _values;
+        private final int _start;
+        private final int _size;
+        private final int _capacity;
+        private final int _chunkBits;
+
+        private Snapshot(double[][] times, double[][][] values, int start, int size, int capacity, int chunkBits)
+        {
+            _times = times;
+            _values = values;
+            _start = start;
+            _size = size;
+            _capacity = capacity;
+            _chunkBits = chunkBits;
+        }
+
+        int size()
+        {
+            return _size;
+        }
+
+        /**
+         * Copies the times of rows from, from + 1, ... into dest[0] onwards
+         */
+        void copyTimes(int from, double[] dest, int length)
+        {
+            _copy(_times, from, dest, length);
+        }
+
+        /**
+         * Copies one of the values of rows from, from + 1, ... into dest[0] onwards
+         */
+        void copyValues(int index, int from, double[] dest, int length)
+        {
+            _copy(_values[index], from, dest, length);
+        }
+
+        // A chunk at a time, so this is a handful of array copies rather than a loop over rows
+        private void _copy(double[][] chunks, int from, double[] dest, int length)
+        {
+            if (from < 0 || length < 0 || from + length > _size)
+            {
+                throw new IndexOutOfBoundsException("Rows " + from + " to " + (from + length) +
+                        " of a TimeSeries snapshot holding " + _size);
+            }
+            int chunkSize = 1 << _chunkBits;
+            int copied = 0;
+            while (copied < length)
+            {
+                int slot = _start + from + copied;
+                if (slot >= _capacity) slot -= _capacity;
+                int offset = slot & (chunkSize - 1);
+                // Stop at the end of the chunk or of the buffer, whichever comes first
+                int count = Math.min(length - copied, Math.min(chunkSize - offset, _capacity - slot));
+                System.arraycopy(chunks[slot >> _chunkBits], offset, dest, copied, count);
+                copied += count;
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import simulation.engine.math.Vector3;
  */
 public abstract class Actor {
     private Vector3 _translation = new Vector3(0,0,1); // z-component should stay 1 for 2D
+    private Vector3 _previousTranslation = new Vector3(0,0,1); // Translation as of the previous simulation step
     private Vector3 _speed = new Vector3(0, 0, 0);
     private Vector3 _acceleration = new Vector3(0, 0, 0);
     private Vector3 _scaleWidthHeight = new Vector3(1, 1, 1);
@@ -40,6 +41,7 @@ public abstract class Actor {
     public void setAsStaticActor(boolean value)
     {
         _isStaticActor = value;
+        boundsChanged();
     }
 
     public boolean isStaticActor()
@@ -98,8 +100,13 @@ public abstract class Actor {
      */
     public void setLocationXYDepth(double x, double y, double depth)
     {
+        boolean xChanged = x != _translation.x();
         _translation.setXYZ(x, y, 1);
+        // Only the whole part of the depth decides the draw order
+        boolean depthChanged = (int)depth != (int)_depth;
         _depth = depth;
+        if (xChanged) boundsChanged();
+        if (depthChanged) depthChanged();
     }
 
     /*
@@ -124,6 +131,7 @@ public abstract class Actor {
     public void setWidthHeight(double width, double height)
     {
         _scaleWidthHeight.setXYZ(width, height, 0);
+        boundsChanged();
     }
 
     /**
@@ -225,6 +233,21 @@ public abstract class Actor {
         return _translation;
     }
 
+    /**
+     * The renderer draws somewhere between the previous and the current translation
+     * depending on how far real time is between two simulation steps
+     */
+    Vector3 getPreviousTranslationVec()
+    {
+        return _previousTranslation;
+    }
+
+    // Remembers the current translation as the previous one (called at the start of each step)
+    void savePreviousTranslation()
+    {
+        _previousTranslation.setXYZ(_translation.x(), _translation.y(), _translation.z());
+    }
+
     Vector3 getSpeedVec()
     {
         return _speed;
@@ -249,4 +272,15 @@ public abstract class Actor {
     {
         return _constrainYMovement;
     }
+
+    // Called when the depth changes enough to affect the draw order
+    void depthChanged()
+    {
+    }
+
+    // Called when the x location, width or static flag changes, which decides where
+    // the renderer looks for this actor
+    void boundsChanged()
+    {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package simulation.engine;
+
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Remembers where a group of render entities were and how they were moving
+ * so they can all be put back later (see restore), which is much cheaper than
+ * removing them from the world and building new ones.
+ *
+ * Only what every entity has is saved: location, depth, speed, acceleration,
+ * size, rotation, whether it is static, its color and its texture. Anything
+ * a subclass keeps on top of that is up to the subclass.
+ */
+public class ActorSnapshot {
+    // Layout of each entity's block in _state
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int DEPTH = 2;
+    private static final int SPEED_X = 3;
+    private static final int SPEED_Y = 4;
+    private static final int ACCELERATION_X = 5;
+    private static final int ACCELERATION_Y = 6;
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 8;
+    private static final int ROTATION = 9;
+    private static final int STATE_SIZE = 10;
+
+    private final ArrayList<RenderEntity> _entities = new ArrayList<>();
+    private final ArrayList<Color> _colors = new ArrayList<>();
+    private double[] _state = new double[STATE_SIZE * 16];
+    private int[] _textureHandles = new int[16];
+    private boolean[] _isStatic = new boolean[16];
+
+    /**
+     * Saves the entity as it is right now - adding an entity again replaces what
+     * was saved for it
+     */
+    public void add(RenderEntity entity)
+    {
+        int index = _entities.indexOf(entity);
+        if (index < 0)
+        {
+            index = _entities.size();
+            _entities.add(entity);
+            _colors.add(null);
+            if (index == _textureHandles.length)
+            {
+                _state = Arrays.copyOf(_state, _state.length * 2);
+                _textureHandles = Arrays.copyOf(_textureHandles, _textureHandles.length * 2);
+                _isStatic = Arrays.copyOf(_isStatic, _isStatic.length * 2);
+            }
+        }
+        int offset = index * STATE_SIZE;
+        _state[offset + X] = entity.getLocationX();
+        _state[offset + Y] = entity.getLocationY();
+        _state[offset + DEPTH] = entity.getDepth();
+        _state[offset + SPEED_X] = entity.getSpeedX();
+        _state[offset + SPEED_Y] = entity.getSpeedY();
+        _state[offset + ACCELERATION_X] = entity.getAccelerationX();
+        _state[offset + ACCELERATION_Y] = entity.getAccelerationY();
+        _state[offset + WIDTH] = entity.getWidth();
+        _state[offset + HEIGHT] = entity.getHeight();
+        _state[offset + ROTATION] = entity.getRotation();
+        _textureHandles[index] = entity.getTextureHandle();
+        _isStatic[index] = entity.isStaticActor();
+        _colors.set(index, entity.getColor());
+    }
+
+    /**
+     * Puts every saved entity back the way it was when it was added. They jump
+     * straight there rather than being drawn moving there.
+     */
+    public void restore()
+    {
+        for (int i = 0; i < _entities.size(); ++i)
+        {
+            RenderEntity entity = _entities.get(i);
+            int offset = i * STATE_SIZE;
+            entity.setAsStaticActor(_isStatic[i]);
+            entity.setLocationXYDepth(_state[offset + X], _state[offset + Y], _state[offset + DEPTH]);
+            entity.setSpeedXY(_state[offset + SPEED_X], _state[offset + SPEED_Y]);
+            entity.setAccelerationXY(_state[offset + ACCELERATION_X], _state[offset + ACCELERATION_Y]);
+            entity.setWidthHeight(_state[offset + WIDTH], _state[offset + HEIGHT]);
+            entity.setRotation(_state[offset + ROTATION]);
+            entity.setTextureHandle(_textureHandles[i]);
+            entity.setColor(_colors.get(i));
+            entity.savePreviousTranslation();
+        }
+    }
+
+    /**
+     * @return number of entities saved
+     */
+    public int size()
+    {
+        return _entities.size();
+    }
+}
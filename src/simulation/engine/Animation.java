@@ -19,16 +19,16 @@ import java.util.HashMap;
  *
  * @author Justin Hall
  */
-public class Animation implements MessageHandler {
+public class Animation {
     private RenderEntity _managedEntity;
     private HashMap<String, Integer> _animationIndexHistories = new HashMap<>();
-    private HashMap<String, ArrayList<String>> _animationCategories = new HashMap<>();
+    private HashMap<String, ArrayList<Integer>> _animationCategories = new HashMap<>(); // Texture handles
     private double _changeRate = 1.0; // If this is 1.0 (for example) it means that every second the frame will change
     private double _elapsedSeconds = 0.0;
     private int _currentAnimIndex = 0;
     private String _currentCategory = "";
-    private ArrayList<String> _currentAnimationSequence;
-    private boolean _animate;
+    private ArrayList<Integer> _currentAnimationSequence;
+    private final BoolCvar _animate = Engine.getConsoleVariables().findBool(Singleton.CALCULATE_MOVEMENT);
 
     /**
      * @param entity entity that this animation manages
@@ -39,8 +39,6 @@ public class Animation implements MessageHandler {
     {
         _managedEntity = entity;
         setAnimationRate(rateOfChange);
-        Engine.getMessagePump().signalInterest(Singleton.CONSOLE_VARIABLE_CHANGED, this);
-        _animate = Boolean.parseBoolean(Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).getcvarValue());
     }
 
     /**
@@ -51,7 +49,7 @@ public class Animation implements MessageHandler {
     public void update(double deltaSeconds)
     {
         if (_currentAnimationSequence == null) return; // No images specified
-        if (!_animate) return;
+        if (!_animate.get()) return;
         _elapsedSeconds += deltaSeconds;
         if (_elapsedSeconds >= _changeRate)
         {
@@ -61,7 +59,7 @@ public class Animation implements MessageHandler {
             {
                 _currentAnimIndex = 0;
             }
-            _managedEntity.setTexture(_currentAnimationSequence.get(_currentAnimIndex));
+            _managedEntity.setTextureHandle(_currentAnimationSequence.get(_currentAnimIndex));
         }
     }
 
@@ -94,6 +92,18 @@ public class Animation implements MessageHandler {
         _currentAnimIndex = _animationIndexHistories.get(category);
     }
 
+    /**
+     * Goes back to the first frame of every category without changing the
+     * current category
+     */
+    public void reset()
+    {
+        _elapsedSeconds = 0.0;
+        for (String category : _animationIndexHistories.keySet()) _animationIndexHistories.put(category, 0);
+        _currentAnimIndex = 0;
+        if (_currentAnimationSequence != null) _managedEntity.setTextureHandle(_currentAnimationSequence.get(0));
+    }
+
     /**
      * Adds a new animation frame for the given category (category will automatically be
      * added if it doesn't exist)
@@ -107,29 +117,14 @@ public class Animation implements MessageHandler {
             _animationCategories.put(category, new ArrayList<>());
             _animationIndexHistories.put(category, 0);
         }
-        _animationCategories.get(category).add(file);
-        Engine.getMessagePump().sendMessage(new Message(Singleton.REGISTER_TEXTURE, file));
+        // Look the texture up once here so changing frames is just an int
+        _animationCategories.get(category).add(Engine.getTextureAtlas().getHandle(file));
         // If we do not have a current animation sequence, set it to the recently
         // added category and make sure to set the entity's texture
         if (_currentAnimationSequence == null)
         {
             _currentAnimationSequence = _animationCategories.get(category);
-            _managedEntity.setTexture(_currentAnimationSequence.get(0));
-        }
-    }
-
-    @Override
-    public void handleMessage(Message message) {
-        switch (message.getMessageName())
-        {
-            case Singleton.CONSOLE_VARIABLE_CHANGED:
-            {
-                ConsoleVariable cvar = (ConsoleVariable)message.getMessageData();
-                if (cvar.getcvarName().equals(Singleton.CALCULATE_MOVEMENT))
-                {
-                    _animate = Boolean.parseBoolean(Engine.getConsoleVariables().find(Singleton.CALCULATE_MOVEMENT).getcvarValue());
-                }
-            }
+            _managedEntity.setTextureHandle(_currentAnimationSequence.get(0));
         }
     }
 }
@@ -0,0 +1,27 @@
+package simulation.engine;
+
+/**
+ * Console variable handle for true/false settings (see CvarHandle)
+ */
+public final class BoolCvar extends CvarHandle {
+    private boolean _value = false;
+
+    BoolCvar(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * @return true if the value is "true" (ignoring case)
+     */
+    public boolean get()
+    {
+        return _value;
+    }
+
+    @Override
+    void load(ConsoleVariable cvar)
+    {
+        _value = cvar != null && cvar.getcvarAsBool();
+    }
+}
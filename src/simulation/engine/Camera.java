@@ -22,6 +22,12 @@ public class Camera {
     private Vector3 _editedEntityLocation = new Vector3(0.0);
     private double _widthScalar = 2.5;
     private double _heightScalar = 3.0;
+    private final IntCvar _screenWidth = Engine.getConsoleVariables().findInt(Singleton.SCR_WIDTH);
+    private final IntCvar _screenHeight = Engine.getConsoleVariables().findInt(Singleton.SCR_HEIGHT);
+    private final DoubleCvar _worldStartX = Engine.getConsoleVariables().findDouble(Singleton.WORLD_START_X);
+    private final DoubleCvar _worldStartY = Engine.getConsoleVariables().findDouble(Singleton.WORLD_START_Y);
+    private final DoubleCvar _worldWidth = Engine.getConsoleVariables().findDouble(Singleton.WORLD_WIDTH);
+    private final DoubleCvar _worldHeight = Engine.getConsoleVariables().findDouble(Singleton.WORLD_HEIGHT);
 
     /**
      * Returns the entity that this camera was attached to
@@ -60,8 +66,8 @@ public class Camera {
             _editedEntityLocation.setXYZ(0.0, 0.0, 0.0);
             return _editedEntityLocation;
         }
-        int scrWidth = Engine.getConsoleVariables().find(Singleton.SCR_WIDTH).getcvarAsInt();
-        int scrHeight = Engine.getConsoleVariables().find(Singleton.SCR_HEIGHT).getcvarAsInt();
+        int scrWidth = _screenWidth.get();
+        int scrHeight = _screenHeight.get();
         _editedEntityLocation.setXYZ(scrWidth / _widthScalar, scrHeight / _heightScalar, 0.0);
         return _editedEntityLocation;
     }
@@ -74,24 +80,34 @@ public class Camera {
      * at the center of the screen, no matter where in the world they are.
      */
     public Vector3 getWorldTranslate()
+    {
+        return getWorldTranslate(1.0);
+    }
+
+    /**
+     * Same as getWorldTranslate() except the attached entity's location is taken
+     * to be alpha (0.0 to 1.0) of the way between its previous and current location.
+     */
+    public Vector3 getWorldTranslate(double alpha)
     {
         if (_attachedTo == null)
         {
             _worldTranslate.setXYZ(0.0, 0.0, 0.0);
             return _worldTranslate;
         }
-        double scrWidth = Engine.getConsoleVariables().find(Singleton.SCR_WIDTH).getcvarAsInt();
-        double scrHeight = Engine.getConsoleVariables().find(Singleton.SCR_HEIGHT).getcvarAsInt();
+        double scrWidth = _screenWidth.get();
+        double scrHeight = _screenHeight.get();
         double scrWidthModified = scrWidth / _widthScalar;
         double scrHeightModified = scrHeight / _heightScalar;
-        double worldWidth = Engine.getConsoleVariables().find(Singleton.WORLD_WIDTH).getcvarAsFloat();
-        double worldHeight = Engine.getConsoleVariables().find(Singleton.WORLD_HEIGHT).getcvarAsFloat();
-        double worldStartX = Engine.getConsoleVariables().find(Singleton.WORLD_START_X).getcvarAsFloat();
-        double worldStartY = Engine.getConsoleVariables().find(Singleton.WORLD_START_Y).getcvarAsFloat();
+        double worldWidth = _worldWidth.get();
+        double worldHeight = _worldHeight.get();
+        double worldStartX = _worldStartX.get();
+        double worldStartY = _worldStartY.get();
         double worldEndX = worldWidth + worldStartX;
         double worldEndY = worldHeight + worldStartY;
-        double locX = _attachedTo.getLocationX();
-        double locY = _attachedTo.getLocationY();
+        Vector3 previous = _attachedTo.getPreviousTranslationVec();
+        double locX = previous.x() + (_attachedTo.getLocationX() - previous.x()) * alpha;
+        double locY = previous.y() + (_attachedTo.getLocationY() - previous.y()) * alpha;
         //double modLocX = locX;// < 0 ? -locX : locX;
         //double modLocY = locY;// < 0 ? -locY : locY;
         double newLocX = locX - scrWidthModified;
@@ -0,0 +1,211 @@
+package simulation.engine;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the config files the console variables were loaded from (see
+ * ConsoleVariables.loadConfigFile) and reloads the ones which change, so
+ * settings can be tuned while the simulation keeps running.
+ *
+ * Files are watched and parsed on a background thread. Only the lines whose
+ * value differs from the last time the file was read are kept, so editing one
+ * setting does not undo changes made to the others while running. Each
+ * reload becomes one batch which the engine applies on its own thread at the
+ * start of a step (see applyPending), so every setting in a batch takes
+ * effect in the same step and the usual CONSOLE_VARIABLE_CHANGED messages go
+ * out for them.
+ */
+class ConfigWatcher implements Runnable {
+    // Editors often write a file in more than one go, so wait for it to settle
+    private static final long SETTLE_MS = 100;
+
+    /**
+     * Settings which changed when a file was reloaded
+     */
+    private static class Batch
+    {
+        final String configFile;
+        final ArrayList<String[]> settings; // {variable, value}
+
+        Batch(String configFile, ArrayList<String[]> settings)
+        {
+            this.configFile = configFile;
+            this.settings = settings;
+        }
+    }
+
+    private final WatchService _watchService;
+    private final Thread _thread;
+    // Only touched while holding the lock on this object
+    private final HashMap<Path, String> _watchedFiles = new HashMap<>(); // Absolute path -> path it was loaded with
+    private final HashMap<Path, LinkedHashMap<String, String>> _lastSettings = new HashMap<>();
+    private final HashSet<Path> _watchedDirectories = new HashSet<>();
+    private final ConcurrentLinkedQueue<Batch> _pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean _running = true;
+
+    /**
+     * @throws IOException if the file system can't be watched
+     */
+    ConfigWatcher() throws IOException
+    {
+        _watchService = FileSystems.getDefault().newWatchService();
+        _thread = new Thread(this, "Config watcher");
+        _thread.setDaemon(true); // Never keeps the application alive
+    }
+
+    void start()
+    {
+        _thread.start();
+    }
+
+    void stop()
+    {
+        _running = false;
+        try
+        {
+            _watchService.close(); // Wakes the watcher thread up
+        }
+        catch (IOException e)
+        {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Starts watching a config file (again) - what it says right now is what later
+     * changes are compared against
+     */
+    synchronized void watch(String configFile)
+    {
+        Path path = Paths.get(configFile).toAbsolutePath().normalize();
+        _watchedFiles.put(path, configFile);
+        LinkedHashMap<String, String> settings = _read(path);
+        _lastSettings.put(path, settings == null ? new LinkedHashMap<>() : settings);
+        Path directory = path.getParent();
+        if (directory == null || _watchedDirectories.contains(directory)) return;
+        try
+        {
+            directory.register(_watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            _watchedDirectories.add(directory);
+        }
+        catch (Exception e)
+        {
+            System.err.println("WARNING: Unable to watch " + configFile + " for changes (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Applies every batch of changes read since the last call. Only the engine's
+     * thread calls this.
+     */
+    void applyPending(ConsoleVariables cvars)
+    {
+        Batch batch;
+        while ((batch = _pending.poll()) != null)
+        {
+            for (String[] setting : batch.settings)
+            {
+                System.out.println("Reloaded " + batch.configFile + ": " + setting[0] + " = " + setting[1]);
+                cvars.setOrRegister(setting[0], setting[1]);
+            }
+        }
+    }
+
+    // Watcher thread
+    @Override
+    public void run()
+    {
+        HashSet<Path> changed = new HashSet<>();
+        while (_running)
+        {
+            try
+            {
+                WatchKey key = _watchService.take();
+                do
+                {
+                    _collectChanges(key, changed);
+                    key = _watchService.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+            }
+            catch (InterruptedException | ClosedWatchServiceException e)
+            {
+                return;
+            }
+            for (Path path : changed) _reload(path);
+            changed.clear();
+        }
+    }
+
+    private synchronized void _collectChanges(WatchKey key, HashSet<Path> changed)
+    {
+        Path directory = (Path)key.watchable();
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                // Lost track of what happened, so check everything in the directory
+                for (Path path : _watchedFiles.keySet())
+                {
+                    if (directory.equals(path.getParent())) changed.add(path);
+                }
+                continue;
+            }
+            Path path = directory.resolve((Path)event.context());
+            if (_watchedFiles.containsKey(path)) changed.add(path);
+        }
+        key.reset();
+    }
+
+    // Reads the file again and queues whatever changed since it was last read
+    private synchronized void _reload(Path path)
+    {
+        if (!Files.exists(path)) return; // Being replaced - wait for it to be created again
+        LinkedHashMap<String, String> settings = _read(path);
+        if (settings == null) return; // Try again when it next changes
+        LinkedHashMap<String, String> last = _lastSettings.get(path);
+        ArrayList<String[]> changes = new ArrayList<>();
+        for (String variable : settings.keySet())
+        {
+            String value = settings.get(variable);
+            if (!value.equals(last.get(variable))) changes.add(new String[] { variable, value });
+        }
+        _lastSettings.put(path, settings);
+        if (!changes.isEmpty()) _pending.add(new Batch(_watchedFiles.get(path), changes));
+    }
+
+    // Null if the file couldn't be read
+    private static LinkedHashMap<String, String> _read(Path path)
+    {
+        LinkedHashMap<String, String> settings = new LinkedHashMap<>();
+        try
+        {
+            for (String line : Files.readAllLines(path))
+            {
+                String[] setting = ConsoleVariables.parseLine(line);
+                if (setting != null) settings.put(setting[0], setting[1]);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("WARNING: Unable to read " + path);
+            return null;
+        }
+        return settings;
+    }
+}
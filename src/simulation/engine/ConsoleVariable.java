@@ -1,5 +1,7 @@
 package simulation.engine;
 
+import java.util.ArrayList;
+
 /**
  * Represents an individual key-value console variable and
  * corresponding helper functions. A console variable
@@ -19,6 +21,9 @@ package simulation.engine;
  * If it fails to cast the data, this is not an issue. It will simply
  * maintain the data as a raw string for later use/manual casting.
  *
+ * Code that reads a variable every frame should hold on to a typed handle
+ * instead (see CvarHandle) - the variable keeps its handles up to date.
+ *
  * @author Justin Hall
  */
 public class ConsoleVariable {
@@ -29,6 +34,9 @@ public class ConsoleVariable {
     private double _cvarFloatVal; // Defaults to -1.0 if _cvarValue cannot be casted
     private boolean _cvarBoolVal = false; // Defaults to false
     private int _numEdits = 0; // Number of times this variable was edited
+    private final ArrayList<CvarHandle> _handles = new ArrayList<>(); // Bound by ConsoleVariables
+    private ConsoleVariables _owner; // Told about every edit once registered
+    private boolean _isChanged = false; // True while waiting in the owner's list of changes
 
     /**
      * Creates a new console variable. Keep in mind that the actual value of the
@@ -140,14 +148,20 @@ public class ConsoleVariable {
         _cvarValue = value;
         try
         {
-            _cvarIntVal = Integer.parseInt(_cvarValue);
             _cvarFloatVal = Double.parseDouble(_cvarValue);
         }
         catch (Exception e)
         {
-            _cvarIntVal = -1;
             _cvarFloatVal = -1.0;
         }
+        try
+        {
+            _cvarIntVal = Integer.parseInt(_cvarValue);
+        }
+        catch (Exception e)
+        {
+            _cvarIntVal = -1;
+        }
         // Try to cast it to a boolean
         try
         {
@@ -157,6 +171,40 @@ public class ConsoleVariable {
         {
             _cvarBoolVal = false;
         }
+        for (int i = 0; i < _handles.size(); ++i) _handles.get(i).changed();
+        if (_owner != null) _owner.variableChanged(this);
+    }
+
+    // Package private - see ConsoleVariables
+    void setOwner(ConsoleVariables owner)
+    {
+        _owner = owner;
+        _isChanged = false;
+    }
+
+    ConsoleVariables getOwner()
+    {
+        return _owner;
+    }
+
+    void setChanged(boolean changed)
+    {
+        _isChanged = changed;
+    }
+
+    boolean isChanged()
+    {
+        return _isChanged;
+    }
+
+    void addHandle(CvarHandle handle)
+    {
+        _handles.add(handle);
+    }
+
+    void removeHandle(CvarHandle handle)
+    {
+        _handles.remove(handle);
     }
 
     @Override
@@ -19,12 +19,26 @@ import java.util.Map;
  * loads. This is useful in the case where you wish to create your own
  * default console variables to be used by your own code.
  *
+ * Config files which have been loaded are reloaded when they change if the
+ * engine is watching them (see ConfigWatcher and eng_watch_config).
+ *
+ * Every registered variable tells this object when it is edited, so finding
+ * out what changed (see getVariableChangesSinceLastCall) only costs as much
+ * as the number of variables which actually changed.
+ *
+ * Typed handles (see findInt, findDouble and findBool) are kept by name rather
+ * than by variable, so they stay valid when a variable is removed and
+ * registered again, including across clear().
+ *
  * @author Justin Hall
  */
 public class ConsoleVariables {
     private HashMap<String, ConsoleVariable> _cvars = new HashMap<>();
-    private HashMap<ConsoleVariable, Integer> _cvarEditCounts = new HashMap<>(); // Keeps track of how many times the cvars were edited
+    private ArrayList<ConsoleVariable> _changedCvars = new ArrayList<>(); // Edited since the last getVariableChangesSinceLastCall
     private ArrayList<ConsoleVariable> _editedCvars = new ArrayList<>();
+    private HashMap<String, ArrayList<CvarHandle>> _handles = new HashMap<>(); // Every handle given out, by name
+    private ArrayList<String> _configFiles = new ArrayList<>(); // Every file loadConfigFile was given
+    private ConfigWatcher _configWatcher; // Null unless the engine is watching the config files
 
     /**
      * @return a list of references to all console variables currently managed by this object
@@ -66,28 +80,67 @@ public class ConsoleVariables {
         {
             System.out.println("Registering console variable (" + cvar + ")");
             _cvars.put(cvar.getcvarName(), cvar);
-            _cvarEditCounts.put(cvar, cvar.getEditCount());
+            cvar.setOwner(this);
+            ArrayList<CvarHandle> handles = _handles.get(cvar.getcvarName());
+            if (handles != null)
+            {
+                for (CvarHandle handle : handles) _bind(handle, cvar);
+            }
         }
     }
 
+    /**
+     * @return handle for reading the variable as an int - the same handle is returned every
+     *         time and it can be asked for before the variable is registered
+     */
+    public IntCvar findInt(String cvar)
+    {
+        IntCvar handle = _findHandle(cvar, IntCvar.class);
+        return handle != null ? handle : _addHandle(new IntCvar(cvar));
+    }
+
+    /**
+     * @return handle for reading the variable as a double (see findInt)
+     */
+    public DoubleCvar findDouble(String cvar)
+    {
+        DoubleCvar handle = _findHandle(cvar, DoubleCvar.class);
+        return handle != null ? handle : _addHandle(new DoubleCvar(cvar));
+    }
+
+    /**
+     * @return handle for reading the variable as a boolean (see findInt)
+     */
+    public BoolCvar findBool(String cvar)
+    {
+        BoolCvar handle = _findHandle(cvar, BoolCvar.class);
+        return handle != null ? handle : _addHandle(new BoolCvar(cvar));
+    }
+
     /**
      * Determines which variables have been changed since the last time this
      * method was called
-     * @return list containing all variables that were changed
+     * @return list containing all variables that were changed, in the order they were
+     *         first edited - the list is reused by the next call
      */
     public ArrayList<ConsoleVariable> getVariableChangesSinceLastCall()
     {
-        _editedCvars.clear();
-        for (Map.Entry<String, ConsoleVariable> entry : _cvars.entrySet())
-        {
-            ConsoleVariable cvar = entry.getValue();
-            if (_cvarEditCounts.get(cvar) != cvar.getEditCount())
-            {
-                _editedCvars.add(cvar);
-                _cvarEditCounts.put(cvar, cvar.getEditCount());
-            }
-        }
-        return _editedCvars;
+        // Swap the lists so that anything edited while the caller goes through the
+        // result is picked up by the next call
+        ArrayList<ConsoleVariable> changed = _changedCvars;
+        _changedCvars = _editedCvars;
+        _changedCvars.clear();
+        _editedCvars = changed;
+        for (int i = 0; i < changed.size(); ++i) changed.get(i).setChanged(false);
+        return changed;
+    }
+
+    // Package private - called by a registered variable every time it is edited
+    void variableChanged(ConsoleVariable cvar)
+    {
+        if (cvar.isChanged()) return; // Already in the list
+        cvar.setChanged(true);
+        _changedCvars.add(cvar);
     }
 
     /**
@@ -96,7 +149,11 @@ public class ConsoleVariables {
      */
     public void unregisterVariable(String cvar)
     {
-        _cvars.remove(cvar);
+        ConsoleVariable removed = _cvars.remove(cvar);
+        if (removed == null) return;
+        _unbindAll(removed);
+        removed.setOwner(null);
+        _changedCvars.remove(removed);
     }
 
     /**
@@ -122,9 +179,15 @@ public class ConsoleVariables {
      */
     public void clear()
     {
+        for (ConsoleVariable cvar : _cvars.values())
+        {
+            _unbindAll(cvar);
+            cvar.setOwner(null);
+        }
         _cvars.clear();
-        _cvarEditCounts.clear();
+        _changedCvars.clear();
         _editedCvars.clear();
+        _configFiles.clear(); // Loaded again after a soft reset
     }
 
     /**
@@ -135,6 +198,8 @@ public class ConsoleVariables {
     public void loadConfigFile(String configFile)
     {
         System.out.println("Reading " + configFile);
+        if (!_configFiles.contains(configFile)) _configFiles.add(configFile);
+        if (_configWatcher != null) _configWatcher.watch(configFile);
         try
         {
             FileReader fileReader = new FileReader(configFile);
@@ -142,26 +207,7 @@ public class ConsoleVariables {
             String line;
             while ((line = reader.readLine()) != null)
             {
-                line = line.replaceAll(" ", "");
-                String variable = "";
-                String value = "";
-                boolean isReadingValue = false;
-                for (int i = 0; i < line.length(); ++i)
-                {
-                    char c = line.charAt(i);
-                    if (c == '+') continue;
-                    if (c == '/' && (i + 1) < line.length() && line.charAt(i + 1) == '/') break; // Found a comment
-                    if (c == '=')
-                    {
-                        isReadingValue = true;
-                        continue;
-                    }
-                    if (isReadingValue) value += c;
-                    else variable += c;
-                }
-                if (variable.equals("")) continue;
-                if (contains(variable)) find(variable).setValue(value);
-                else registerVariable(new ConsoleVariable(variable, value));
+                _parseLine(line);
             }
         }
         catch (Exception e)
@@ -170,4 +216,114 @@ public class ConsoleVariables {
             //System.exit(-1);
         }
     }
+
+    /**
+     * Registers/overrides console variables from the command line. Only
+     * arguments of the form "+name=value" are considered, which matches the
+     * syntax of the config files (Ex: +eng_max_fps=120).
+     * @param args command line arguments passed to the process
+     */
+    public void loadCommandLine(String[] args)
+    {
+        if (args == null) return;
+        for (String arg : args)
+        {
+            if (arg.startsWith("+")) _parseLine(arg);
+        }
+    }
+
+    private <T extends CvarHandle> T _findHandle(String cvar, Class<T> type)
+    {
+        ArrayList<CvarHandle> handles = _handles.get(cvar);
+        if (handles == null) return null;
+        for (CvarHandle handle : handles)
+        {
+            if (type.isInstance(handle)) return type.cast(handle);
+        }
+        return null;
+    }
+
+    private <T extends CvarHandle> T _addHandle(T handle)
+    {
+        _handles.computeIfAbsent(handle.getName(), name -> new ArrayList<>()).add(handle);
+        ConsoleVariable cvar = _cvars.get(handle.getName());
+        if (cvar != null) _bind(handle, cvar);
+        return handle;
+    }
+
+    private static void _bind(CvarHandle handle, ConsoleVariable cvar)
+    {
+        cvar.addHandle(handle);
+        handle.bind(cvar);
+    }
+
+    private void _unbindAll(ConsoleVariable cvar)
+    {
+        ArrayList<CvarHandle> handles = _handles.get(cvar.getcvarName());
+        if (handles == null) return;
+        for (CvarHandle handle : handles)
+        {
+            cvar.removeHandle(handle);
+            handle.bind(null);
+        }
+    }
+
+    // Parses a single "+ variable = value // comment" line and registers
+    // or updates the corresponding console variable
+    private void _parseLine(String line)
+    {
+        String[] setting = parseLine(line);
+        if (setting != null) setOrRegister(setting[0], setting[1]);
+    }
+
+    /*
+     * The following are package private and used by Engine and ConfigWatcher
+     */
+
+    /**
+     * Splits a single "+ variable = value // comment" line
+     * @return {variable, value} or null if the line doesn't set anything
+     */
+    static String[] parseLine(String line)
+    {
+        line = line.replaceAll(" ", "");
+        String variable = "";
+        String value = "";
+        boolean isReadingValue = false;
+        for (int i = 0; i < line.length(); ++i)
+        {
+            char c = line.charAt(i);
+            if (c == '+') continue;
+            if (c == '/' && (i + 1) < line.length() && line.charAt(i + 1) == '/') break; // Found a comment
+            if (c == '=')
+            {
+                isReadingValue = true;
+                continue;
+            }
+            if (isReadingValue) value += c;
+            else variable += c;
+        }
+        if (variable.equals("")) return null;
+        return new String[] { variable, value };
+    }
+
+    /**
+     * Sets the variable, registering it first if it doesn't exist
+     */
+    void setOrRegister(String variable, String value)
+    {
+        if (contains(variable)) find(variable).setValue(value);
+        else registerVariable(new ConsoleVariable(variable, value));
+    }
+
+    /**
+     * Has the watcher reload every config file loaded so far, and any loaded later,
+     * when it changes (null stops telling it about new files)
+     */
+    void setConfigWatcher(ConfigWatcher configWatcher)
+    {
+        _configWatcher = configWatcher;
+        if (configWatcher == null) return;
+        for (String configFile : _configFiles) configWatcher.watch(configFile);
+    }
 }
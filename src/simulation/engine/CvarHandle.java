@@ -0,0 +1,71 @@
+package simulation.engine;
+
+/**
+ * A typed handle on a console variable, looked up once (see
+ * ConsoleVariables.findInt, findDouble and findBool) so that code which reads
+ * a setting every frame never has to search the variable table or parse its
+ * string. The variable pushes its new value into its handles whenever it is
+ * set, so reading a handle is a plain field read.
+ *
+ * The version goes up every time the value is set, which makes it cheap to
+ * rebuild anything worked out from the variable only when it changes.
+ *
+ * A handle can be asked for before its variable is registered and it lives
+ * across a soft reset - until the variable is registered (again) it holds the
+ * same value a console variable does when its string can't be converted.
+ */
+public abstract class CvarHandle {
+    private final String _name;
+    private ConsoleVariable _cvar; // Null while the variable isn't registered
+    private int _version = 0;
+
+    CvarHandle(String name)
+    {
+        _name = name;
+    }
+
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * @return number of times the value has been set - only ever goes up
+     */
+    public int getVersion()
+    {
+        return _version;
+    }
+
+    /**
+     * @return true if the variable is currently registered
+     */
+    public boolean isRegistered()
+    {
+        return _cvar != null;
+    }
+
+    // Package private - called by ConsoleVariables when the variable is registered or removed
+    void bind(ConsoleVariable cvar)
+    {
+        _cvar = cvar;
+        changed();
+    }
+
+    ConsoleVariable getConsoleVariable()
+    {
+        return _cvar;
+    }
+
+    // Called by the variable every time it is set
+    void changed()
+    {
+        ++_version;
+        load(_cvar);
+    }
+
+    /**
+     * Copies the value out of the variable, which is null if it isn't registered
+     */
+    abstract void load(ConsoleVariable cvar);
+}
@@ -0,0 +1,143 @@
+package simulation.engine;
+
+/**
+ * A fixed number of textured marks (decals) painted onto the world, such as
+ * skid marks. Once the layer is full each new decal replaces the oldest one,
+ * so adding decals never allocates anything no matter how many are added.
+ *
+ * The whole layer is a single render entity: it is added to the world once and
+ * the renderer draws every decal in it in one pass at the layer's depth. Decals
+ * don't move and are given in world coordinates. They can be anywhere along the
+ * world, so the layer itself has no location or size - the renderer never culls
+ * it as a whole and skips the decals which are off screen one by one instead.
+ */
+public class DecalLayer extends RenderEntity {
+    private final int _capacity;
+    private final double[] _x;
+    private final double[] _y;
+    private final double[] _width;
+    private final double[] _height;
+    private final int[] _texture; // Handles (see TextureAtlas)
+    private String _lastTexture; // Most recently added texture and its handle
+    private int _lastTextureHandle;
+    private int _next = 0; // Slot the next decal goes in
+    private int _size = 0;
+
+    /**
+     * @param capacity most decals kept at once
+     * @param depth depth every decal is drawn at
+     */
+    public DecalLayer(int capacity, double depth)
+    {
+        _capacity = capacity;
+        _x = new double[capacity];
+        _y = new double[capacity];
+        _width = new double[capacity];
+        _height = new double[capacity];
+        _texture = new int[capacity];
+        setLocationXYDepth(0, 0, depth);
+        setWidthHeight(0, 0);
+    }
+
+    /**
+     * Paints a decal onto the world, replacing the oldest decal if the layer is full
+     * @param x world x location
+     * @param y world y location
+     * @param texture texture to draw it with
+     */
+    public void addDecal(double x, double y, double width, double height, String texture)
+    {
+        int slot = _next;
+        _x[slot] = x;
+        _y[slot] = y;
+        _width[slot] = width;
+        _height[slot] = height;
+        if (texture != _lastTexture)
+        {
+            _lastTexture = texture;
+            _lastTextureHandle = Engine.getTextureAtlas().getHandle(texture);
+        }
+        _texture[slot] = _lastTextureHandle;
+        _next = (slot + 1) % _capacity;
+        if (_size < _capacity) ++_size;
+    }
+
+    /**
+     * Removes every decal
+     */
+    public void clearDecals()
+    {
+        _next = 0;
+        _size = 0;
+    }
+
+    /**
+     * @return number of decals currently in the layer
+     */
+    public int getNumDecals()
+    {
+        return _size;
+    }
+
+    public int getCapacity()
+    {
+        return _capacity;
+    }
+
+    @Override
+    public void pulse(double deltaSeconds)
+    {
+        // Decals don't change once they are painted
+    }
+
+    /**
+     * Only the renderer needs to see what is in the layer, so adding it to the world
+     * does not make it a pulse entity
+     */
+    @Override
+    public void addToWorld()
+    {
+        Engine.getMessagePump().sendMessage(new Message(Singleton.ADD_RENDER_ENTITY, this));
+    }
+
+    @Override
+    public void removeFromWorld()
+    {
+        Engine.getMessagePump().sendMessage(new Message(Singleton.REMOVE_RENDER_ENTITY, this));
+    }
+
+    /*
+     * The following are package private and used by the Renderer. Decals are
+     * numbered 0 (the oldest) to getNumDecals() - 1.
+     */
+    double getDecalX(int decal)
+    {
+        return _x[_slot(decal)];
+    }
+
+    double getDecalY(int decal)
+    {
+        return _y[_slot(decal)];
+    }
+
+    double getDecalWidth(int decal)
+    {
+        return _width[_slot(decal)];
+    }
+
+    double getDecalHeight(int decal)
+    {
+        return _height[_slot(decal)];
+    }
+
+    int getDecalTextureHandle(int decal)
+    {
+        return _texture[_slot(decal)];
+    }
+
+    private int _slot(int decal)
+    {
+        int slot = _next - _size + decal;
+        return slot < 0 ? slot + _capacity : slot;
+    }
+}
@@ -0,0 +1,27 @@
+package simulation.engine;
+
+/**
+ * Console variable handle for decimal numbers (see CvarHandle)
+ */
+public final class DoubleCvar extends CvarHandle {
+    private double _value = -1.0;
+
+    DoubleCvar(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * @return value as a double, or -1.0 if it isn't one
+     */
+    public double get()
+    {
+        return _value;
+    }
+
+    @Override
+    void load(ConsoleVariable cvar)
+    {
+        _value = cvar == null ? -1.0 : cvar.getcvarAsFloat();
+    }
+}
@@ -0,0 +1,122 @@
+package simulation.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeMap;
+
+/**
+ * The renderer's draw order: every render entity filed under its depth, with
+ * the furthest back depth first. Entities which share a depth are kept in the
+ * order they were added, so the same scene is always drawn the same way.
+ *
+ * The list is kept sorted between frames. Entities tell it when their depth
+ * changes (see Actor.setLocationXYDepth) and update() only re-files those, so
+ * the cost of keeping it sorted depends on how many depths changed rather than
+ * how many entities there are.
+ */
+class DrawList {
+    private final TreeMap<Integer, ArrayList<RenderEntity>> _buckets = new TreeMap<>();
+    private final ArrayList<RenderEntity> _changed = new ArrayList<>();
+    private long _nextSequence = 0;
+
+    /**
+     * Adds an entity after every other entity at its depth - adding it again does nothing
+     */
+    void add(RenderEntity entity)
+    {
+        if (entity.getDrawList() == this) return;
+        entity.setDrawList(this, _nextSequence++, _depthKey(entity));
+        _insert(entity);
+    }
+
+    void remove(RenderEntity entity)
+    {
+        if (entity.getDrawList() != this) return;
+        _removeFromBucket(entity);
+        entity.setDrawList(null, 0, 0);
+    }
+
+    void clear()
+    {
+        for (ArrayList<RenderEntity> bucket : _buckets.values())
+        {
+            for (RenderEntity entity : bucket) entity.setDrawList(null, 0, 0);
+            bucket.clear();
+        }
+        _changed.clear();
+    }
+
+    /**
+     * Called when an entity's depth changes - it is moved by the next update()
+     */
+    void depthChanged(RenderEntity entity)
+    {
+        _changed.add(entity);
+    }
+
+    /**
+     * Moves every entity whose depth changed since the last call to its new depth
+     */
+    void update()
+    {
+        for (int i = 0; i < _changed.size(); ++i)
+        {
+            RenderEntity entity = _changed.get(i);
+            // It may have been removed (or changed back) since
+            if (entity.getDrawList() != this) continue;
+            int key = _depthKey(entity);
+            if (key == entity.getDrawKey()) continue;
+            _removeFromBucket(entity);
+            entity.setDrawList(this, entity.getDrawSequence(), key);
+            _insert(entity);
+        }
+        _changed.clear();
+    }
+
+    /**
+     * @return entities grouped by depth, furthest back first - only valid after update()
+     */
+    Collection<ArrayList<RenderEntity>> getBuckets()
+    {
+        return _buckets.values();
+    }
+
+    // * -1 because if the depth is negative it needs to come later in the list so that
+    // it gets drawn last and will then appear to be on top of other objects
+    private static int _depthKey(RenderEntity entity)
+    {
+        return (int)entity.getDepth() * -1;
+    }
+
+    private void _insert(RenderEntity entity)
+    {
+        ArrayList<RenderEntity> bucket = _buckets.computeIfAbsent(entity.getDrawKey(), key -> new ArrayList<>());
+        int size = bucket.size();
+        // Usually the newest entity at this depth, so check the end first
+        if (size == 0 || bucket.get(size - 1).getDrawSequence() < entity.getDrawSequence()) bucket.add(entity);
+        else bucket.add(-_search(bucket, entity.getDrawSequence()) - 1, entity);
+    }
+
+    private void _removeFromBucket(RenderEntity entity)
+    {
+        ArrayList<RenderEntity> bucket = _buckets.get(entity.getDrawKey());
+        int index = _search(bucket, entity.getDrawSequence());
+        if (index >= 0) bucket.remove(index);
+    }
+
+    // Same contract as Collections.binarySearch, ordered by add sequence
+    private static int _search(ArrayList<RenderEntity> bucket, long sequence)
+    {
+        int low = 0;
+        int high = bucket.size() - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            long midSequence = bucket.get(mid).getDrawSequence();
+            if (midSequence < sequence) low = mid + 1;
+            else if (midSequence > sequence) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+}
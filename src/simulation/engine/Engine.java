@@ -7,7 +7,7 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.stage.Stage;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The engine is a singleton class as there should never be more than
@@ -15,6 +15,12 @@ import java.util.HashSet;
  * and shutdown of all subsystems which comprise the application, and from
  * there it drives the system in real time (30-60+ updates per second).
  *
+ * Simulated time is kept by a SimulationClock: every pulse advances the
+ * simulation by exactly 1 / eng_physics_hz seconds, and eng_time_scale decides
+ * how many of those steps happen per real second (1.0 is real time, 10.0 is ten
+ * times faster and 0 is as fast as possible). Each drawn frame interpolates
+ * between the last two steps so movement stays smooth at any step rate.
+ *
  * Notable functions include:
  *      getMessagePump()
  *      getConsoleVariables()
@@ -22,7 +28,8 @@ import java.util.HashSet;
  * A message pump is used to connect the various parts of the application without
  * having to pass hard references to everyone that needs them. Instead, messages
  * are registered and sent and those who are interested will signal interest in
- * them.
+ * them. Messages can be sent from any thread but are always handled on the
+ * engine's thread.
  *
  * On the other hand, console variables provide a way to store global state. This
  * state is made up of a variety of input sources which can include the command
@@ -32,6 +39,11 @@ import java.util.HashSet;
  * Be aware that this class is meant to be the central point of startup for
  * the process, and as such it has implemented a main method.
  *
+ * HeadlessMain provides a second entry point which skips JavaFX entirely: no
+ * Window, Renderer or GUI is created and the simulation is stepped in a tight
+ * loop as fast as the CPU allows (see eng_headless_ticks). For both entry points
+ * any argument of the form "+name=value" overrides the matching console variable.
+ *
  * @author Justin Hall
  */
 public class Engine extends Application implements PulseEntity, MessageHandler {
@@ -40,18 +52,32 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
     // Package private
     static final String R_RENDER_SCENE = "r_render_screen";
     static final String R_UPDATE_ENTITIES = "r_update_entities";
+    static final String R_SNAPSHOT_ENTITIES = "r_snapshot_entities";
+    private static String[] _commandLineArgs = new String[0];
+    private static boolean _isHeadless = false;
 
     private Stage _initialStage;
-    private HashSet<PulseEntity> _pulseEntities;
+    // Pulsed in the order they were added - walked by index so a step allocates no iterator
+    private ArrayList<PulseEntity> _pulseEntities;
     private ApplicationEntryPoint _application;
-    private MessagePump _messageSystem;
+    private volatile MessagePump _messageSystem; // Replaced during a soft reset, read from any thread
     private ConsoleVariables _cvarSystem;
     private Window _window;
     private Renderer _renderer;
     private int _maxFrameRate;
-    private long _lastFrameTimeMS;
+    private SimulationClock _clock;
+    private SessionRecorder _recorder; // Null unless eng_record_session is set
+    private TextureAtlas _textureAtlas; // Kept across soft resets
+    private ConfigWatcher _configWatcher; // Null unless eng_watch_config is set, kept across soft resets
+    // Ids of the messages sent every frame so sending them never has to look up the
+    // name - they are sent through the message pump's pool so nothing is allocated
+    private int _renderSceneId;
+    private int _updateEntitiesId;
+    private int _snapshotEntitiesId;
+    private int _cvarChangedId;
     private boolean _isRunning = false;
-    private boolean _updateEntities = true; // If false, nothing is allowed to move
+    private BoolCvar _calculateMovement; // If false, nothing is allowed to move
+    private long _startNS; // When start() was called, 0 once the first frame has been drawn
 
     /**
      * Warning! Do not call the MessagePump's dispatch method!
@@ -73,9 +99,24 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
         return _engine._cvarSystem;
     }
 
+    // Package private - every texture the renderer can draw (see TextureAtlas)
+    static TextureAtlas getTextureAtlas()
+    {
+        return _engine._textureAtlas;
+    }
+
+    /**
+     * @return true if the engine was started without a window/renderer/GUI
+     */
+    public static boolean isHeadless()
+    {
+        return _isHeadless;
+    }
+
     @Override
     public void start(Stage stage) {
         _initialStage = stage;
+        _startNS = System.nanoTime();
         // Initialize the engine
         _preInit();
         _init(stage);
@@ -85,40 +126,89 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
             @Override
             public void handle(long now) {
                 if (!_isRunning) System.exit(0); // Need to shut the system down
-                long currentTimeMS = System.currentTimeMillis();
-                double deltaSeconds = (currentTimeMS - _lastFrameTimeMS) / 1000.0;
-                // Don't pulse faster than the maximum frame rate
-                //if (deltaSeconds <= (1.0 / 60)) return;
-                //System.out.println(deltaSeconds);
-                pulse(deltaSeconds);
-                _lastFrameTimeMS = currentTimeMS;
+                _runFrame();
             }
         }.start();
     }
 
+    // Takes however many simulation steps are due and then draws the scene once
+    private void _runFrame()
+    {
+        long frameStartNS = System.nanoTime();
+        if (_clock.isUnbounded())
+        {
+            // Spend up to half of a frame stepping and leave the rest for JavaFX
+            long budgetNS = 500_000_000L / _maxFrameRate;
+            do
+            {
+                _step();
+            } while (_isRunning && System.nanoTime() - frameStartNS < budgetNS);
+        }
+        else
+        {
+            int steps = _clock.advance(frameStartNS);
+            for (int i = 0; i < steps && _isRunning; ++i) _step();
+        }
+        _renderFrame(_clock.getInterpolationAlpha());
+        if (_startNS != 0)
+        {
+            // Textures still loading in the background are drawn as placeholders, so this
+            // doesn't wait for them (see TextureAtlas)
+            System.out.println(String.format("Engine: first frame drawn %.1f ms after start",
+                    (System.nanoTime() - _startNS) / 1e6));
+            _startNS = 0;
+        }
+    }
+
+    // Advances the simulation by exactly one fixed step
+    private void _step()
+    {
+        if (_recorder != null) _recorder.beginStep(_clock.getNumSteps(), _clock.getSimulatedSeconds());
+        pulse(_clock.getFixedStepSeconds());
+        _clock.recordStep();
+    }
+
+    // Tells the renderer to draw the scene - alpha is how far between the previous and
+    // the current simulation step things should be drawn
+    private void _renderFrame(double alpha)
+    {
+        if (_isHeadless) return;
+        // Anything dispatched here happens before the next step's entities are pulsed,
+        // so that's the step it is recorded under
+        if (_recorder != null) _recorder.beginStep(_clock.getNumSteps(), _clock.getSimulatedSeconds());
+        _messageSystem.sendMessage(_renderSceneId, alpha);
+        _messageSystem.dispatchMessages();
+    }
+
     /**
-     * Represents the main game/simulation loop
+     * Represents the main game/simulation loop. This performs a single simulation
+     * step and is driven by the SimulationClock, so deltaSeconds is always the
+     * fixed step size.
      */
     @Override
     public void pulse(double deltaSeconds) {
+        // Anything edited in a config file since the last step takes effect now
+        if (_configWatcher != null) _configWatcher.applyPending(_cvarSystem);
         // Check if any console variables changed and send messages for any that have
         ArrayList<ConsoleVariable> changedVars = _cvarSystem.getVariableChangesSinceLastCall();
         for (ConsoleVariable cvar : changedVars)
         {
-            _messageSystem.sendMessage(new Message(Singleton.CONSOLE_VARIABLE_CHANGED, cvar));
+            _messageSystem.sendMessage(_cvarChangedId, cvar);
+        }
+        // Make sure these get added so that the renderer remembers where everything was
+        // before this step and all entities are updated - in headless mode there is no
+        // renderer to receive them
+        if (!_isHeadless)
+        {
+            _messageSystem.sendMessage(_snapshotEntitiesId);
+            if (_calculateMovement.get()) _messageSystem.sendMessage(_updateEntitiesId, deltaSeconds);
         }
-        // Make sure these two get added so that all entities are updated and
-        // the screen is refreshed
-        if (_updateEntities) _messageSystem.sendMessage(new Message(Engine.R_UPDATE_ENTITIES, deltaSeconds));
-        _messageSystem.sendMessage(new Message(Engine.R_RENDER_SCENE, deltaSeconds));
         // Make sure we keep the messages flowing
         _messageSystem.dispatchMessages();
-        for (PulseEntity entity : _pulseEntities)
+        for (int i = 0; i < _pulseEntities.size(); ++i)
         {
-            entity.pulse(deltaSeconds);
+            _pulseEntities.get(i).pulse(deltaSeconds);
         }
-        // Tell the renderer to update the screen
-        //_renderer.render(deltaSeconds);
     }
 
     @Override
@@ -137,9 +227,13 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
             case Singleton.CONSOLE_VARIABLE_CHANGED:
             {
                 ConsoleVariable cvar = (ConsoleVariable)message.getMessageData();
-                if (cvar.getcvarName().equals(Singleton.CALCULATE_MOVEMENT))
+                if (cvar.getcvarName().equals(Singleton.ENG_TIME_SCALE))
+                {
+                    _clock.setTimeScale(cvar.getcvarAsFloat());
+                }
+                else if (cvar.getcvarName().equals(Singleton.ENG_PHYSICS_HZ) && cvar.getcvarAsFloat() > 0)
                 {
-                    _updateEntities = Boolean.parseBoolean(cvar.getcvarValue());
+                    _clock.setFixedStepSeconds(1.0 / cvar.getcvarAsFloat());
                 }
                 break;
             }
@@ -147,13 +241,130 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
                 System.err.println("Engine: performing an in-place soft reset");
                 _softRestart();
                 break;
+            case Singleton.PERFORM_WARM_RESET:
+                _warmRestart();
+                break;
         }
     }
 
     public void shutdown()
     {
+        if (!_isRunning) return;
         _isRunning = false;
         _application.shutdown();
+        if (_recorder != null) _recorder.close();
+        if (_configWatcher != null) _configWatcher.stop();
+    }
+
+    // Called by JavaFX when the window is closed
+    @Override
+    public void stop()
+    {
+        shutdown();
+    }
+
+    /**
+     * Drives the simulation without JavaFX. Steps are taken as fast as the CPU
+     * allows unless eng_time_scale is positive, in which case they are paced to
+     * the real time clock (Ex: 10.0 runs ten simulated seconds per real second).
+     * This is called by HeadlessMain and must not be called once the engine
+     * has been started as a JavaFX application.
+     * @param args command line arguments
+     */
+    static void runHeadless(String[] args)
+    {
+        initHeadless(args)._runHeadless();
+    }
+
+    /**
+     * Starts up every subsystem without JavaFX (see runHeadless) but does not
+     * drive the simulation. This is meant for tools such as the benchmarks which
+     * call into individual subsystems themselves. Calling it again returns the
+     * already initialized engine.
+     * @param args command line arguments
+     * @return the initialized engine
+     */
+    public static Engine initHeadless(String[] args)
+    {
+        if (_engine != null) return _engine;
+        _commandLineArgs = args;
+        _isHeadless = true;
+        Engine engine = new Engine();
+        engine._preInit();
+        engine._init(null);
+        return engine;
+    }
+
+    /**
+     * Advances the simulation by exactly one fixed step right away. This is meant for
+     * tools which drive a headless engine themselves (see initHeadless), such as
+     * ReplayDriver, so they can do work between steps.
+     */
+    public void step()
+    {
+        _step();
+    }
+
+    /**
+     * @return number of steps taken so far
+     */
+    public long getNumSteps()
+    {
+        return _clock.getNumSteps();
+    }
+
+    /**
+     * @return simulated time at the start of the next step
+     */
+    public double getSimulatedSeconds()
+    {
+        return _clock.getSimulatedSeconds();
+    }
+
+    private void _runHeadless()
+    {
+        long maxTicks = _cvarSystem.find(Singleton.ENG_HEADLESS_TICKS).getcvarAsInt();
+        System.out.println("Engine: running headless for " + maxTicks + " ticks (" +
+                _clock.getFixedStepSeconds() + "s per tick, time scale " + _clock.getTimeScale() + ")");
+        long startNS = System.nanoTime();
+        long lastReportNS = startNS;
+        long lastReportTicks = 0;
+        long ticks = 0;
+        while (_isRunning && ticks < maxTicks)
+        {
+            int steps = 1;
+            if (!_clock.isUnbounded())
+            {
+                steps = _clock.advance(System.nanoTime());
+                if (steps == 0)
+                {
+                    LockSupport.parkNanos(_clock.getNanosUntilNextStep());
+                    continue;
+                }
+            }
+            for (int i = 0; i < steps && _isRunning && ticks < maxTicks; ++i)
+            {
+                _step();
+                ++ticks;
+            }
+            long nowNS = System.nanoTime();
+            if (nowNS - lastReportNS >= 1_000_000_000L)
+            {
+                _reportTicksPerSecond("Engine: ", ticks - lastReportTicks, nowNS - lastReportNS);
+                lastReportNS = nowNS;
+                lastReportTicks = ticks;
+            }
+        }
+        long elapsedNS = System.nanoTime() - startNS;
+        _reportTicksPerSecond("Engine: headless run finished - " + ticks + " ticks, " +
+                String.format("%.1f", _clock.getSimulatedSeconds()) + " simulated seconds, ", ticks, elapsedNS);
+        shutdown();
+    }
+
+    private void _reportTicksPerSecond(String prefix, long ticks, long elapsedNS)
+    {
+        double elapsedSeconds = elapsedNS / 1_000_000_000.0;
+        System.out.println(prefix + String.format("%.1f", ticks / elapsedSeconds) + " ticks/s");
     }
 
     // Performs memory allocation of core submodules so that
@@ -164,10 +375,16 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
         _isInitialized = true;
         _engine = this; // This is a static variable
         _cvarSystem = new ConsoleVariables();
+        _calculateMovement = _cvarSystem.findBool(Singleton.CALCULATE_MOVEMENT);
         _messageSystem = new MessagePump();
-        _pulseEntities = new HashSet<>();
-        _window = new Window();
-        _renderer = new Renderer();
+        _textureAtlas = new TextureAtlas(!_isHeadless);
+        _pulseEntities = new ArrayList<>();
+        _clock = new SimulationClock(1.0 / 60, 1.0);
+        if (!_isHeadless)
+        {
+            _window = new Window();
+            _renderer = new Renderer();
+        }
         _application = new ApplicationEntryPoint();
         _isRunning = true;
     }
@@ -177,20 +394,28 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
     private void _init(Stage stage)
     {
         _cvarSystem.loadConfigFile("src/resources/engine.cfg");
+        _cvarSystem.loadCommandLine(_commandLineArgs);
         _registerDefaultCVars();
-        _updateEntities = Boolean.parseBoolean(_cvarSystem.find(Singleton.CALCULATE_MOVEMENT).getcvarValue());
         // Make sure we register all of the message types
         _registerMessageTypes();
+        _startRecording();
+        _startWatchingConfig();
         // Signal interest in the things the simulation.engine needs to know about
         _messageSystem.signalInterest(Singleton.ADD_PULSE_ENTITY, this);
         _messageSystem.signalInterest(Singleton.REMOVE_PULSE_ENTITY, this);
         _messageSystem.signalInterest(Singleton.CONSOLE_VARIABLE_CHANGED, this);
         _messageSystem.signalInterest(Singleton.REMOVE_ALL_PULSE_ENTITIES, this);
         _messageSystem.signalInterest(Singleton.PERFORM_SOFT_RESET, this);
-        _pulseEntities = new HashSet<>();
-        _lastFrameTimeMS = System.currentTimeMillis();
-        GraphicsContext gc = _window.init(stage);
-        _renderer.init(gc);
+        _messageSystem.signalInterest(Singleton.PERFORM_WARM_RESET, this);
+        _pulseEntities = new ArrayList<>();
+        double physicsHz = _cvarSystem.find(Singleton.ENG_PHYSICS_HZ).getcvarAsFloat();
+        if (physicsHz > 0) _clock.setFixedStepSeconds(1.0 / physicsHz);
+        _clock.setTimeScale(_cvarSystem.find(Singleton.ENG_TIME_SCALE).getcvarAsFloat());
+        if (!_isHeadless)
+        {
+            GraphicsContext gc = _window.init(stage);
+            _renderer.init(gc);
+        }
         _application.init();
         _maxFrameRate = _cvarSystem.find(Singleton.ENG_MAX_FPS).getcvarAsInt();
     }
@@ -211,12 +436,79 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
         getMessagePump().sendMessage(new Message(Singleton.REMOVE_ALL_UI_ELEMENTS));
         // Dispatch the messages immediately
         getMessagePump().dispatchMessages();
-        // Reallocate these only
-        _cvarSystem = new ConsoleVariables();
+        // Reallocate the message pump only - the console variables are emptied instead
+        // so that the handles given out for them stay valid (see CvarHandle)
+        _cvarSystem.clear();
         _messageSystem = new MessagePump();
         _init(_initialStage);
     }
 
+    /**
+     * A reset which keeps every submodule as it is - the console variables, message
+     * handlers, entities, UI and loaded textures all stay - and only asks the
+     * ApplicationEntryPoint to put its own state back the way it started. A recording
+     * still starts a new session, the same as after a soft reset.
+     */
+    private void _warmRestart()
+    {
+        long startNS = System.nanoTime();
+        if (_recorder != null) _recorder.beginSession();
+        _application.reset();
+        System.out.println(String.format("Engine: warm reset took %.3f ms", (System.nanoTime() - startNS) / 1e6));
+    }
+
+    // Attaches the session recorder (creating it the first time) to the current message
+    // pump if eng_record_session is set
+    private void _startRecording()
+    {
+        String path = _cvarSystem.find(Singleton.ENG_RECORD_SESSION).getcvarValue();
+        if (_recorder == null && !path.isEmpty())
+        {
+            try
+            {
+                long chunkBytes = _cvarSystem.find(Singleton.ENG_RECORD_MB).getcvarAsInt() * 1024L * 1024L;
+                _recorder = new SessionRecorder(path, chunkBytes);
+                System.out.println("Engine: recording session to " + path);
+            }
+            catch (Exception e)
+            {
+                System.err.println("WARNING: Unable to record session to " + path + " (" + e.getMessage() + ")");
+                return;
+            }
+        }
+        if (_recorder == null) return;
+        _recorder.beginSession();
+        _messageSystem.setRecorder(_recorder);
+    }
+
+    // Starts reloading the config files when they change (creating the watcher the
+    // first time) if eng_watch_config is set
+    private void _startWatchingConfig()
+    {
+        if (!_cvarSystem.find(Singleton.ENG_WATCH_CONFIG).getcvarAsBool())
+        {
+            // Turned off since the last soft reset
+            if (_configWatcher != null) _configWatcher.stop();
+            _configWatcher = null;
+            _cvarSystem.setConfigWatcher(null);
+            return;
+        }
+        if (_configWatcher == null)
+        {
+            try
+            {
+                _configWatcher = new ConfigWatcher();
+                _configWatcher.start();
+            }
+            catch (Exception e)
+            {
+                System.err.println("WARNING: Unable to watch the config files for changes (" + e.getMessage() + ")");
+                return;
+            }
+        }
+        _cvarSystem.setConfigWatcher(_configWatcher);
+    }
+
     private void _registerDefaultCVars()
     {
         _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_MAX_FPS, "60", "60"));
@@ -226,6 +518,16 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
         _cvarSystem.registerVariable(new ConsoleVariable(Singleton.WORLD_WIDTH, "1000", "0"));
         _cvarSystem.registerVariable(new ConsoleVariable(Singleton.WORLD_HEIGHT, "1000", "0"));
         _cvarSystem.registerVariable(new ConsoleVariable(Singleton.CALCULATE_MOVEMENT, "true", "true"));
+        _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_HEADLESS_TICKS, "100000", "100000"));
+        _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_PHYSICS_HZ, "60", "60"));
+        _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_RECORD_SESSION, "", ""));
+        _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_RECORD_MB, "16", "16"));
+        // Headless runs default to unbounded since nobody is watching
+        String timeScale = _isHeadless ? "0" : "1.0";
+        _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_TIME_SCALE, timeScale, timeScale));
+        // Only worth watching the config files if someone can edit them while it runs
+        String watchConfig = _isHeadless ? "false" : "true";
+        _cvarSystem.registerVariable(new ConsoleVariable(Singleton.ENG_WATCH_CONFIG, watchConfig, watchConfig));
     }
 
     private void _registerMessageTypes()
@@ -241,13 +543,15 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
         _messageSystem.registerMessage(new Message(Singleton.REMOVE_RENDER_ENTITY));
         _messageSystem.registerMessage(new Message(Singleton.REGISTER_TEXTURE));
         _messageSystem.registerMessage(new Message(Singleton.SET_MAIN_CAMERA));
-        _messageSystem.registerMessage(new Message(Singleton.CONSOLE_VARIABLE_CHANGED));
-        _messageSystem.registerMessage(new Message(R_RENDER_SCENE));
-        _messageSystem.registerMessage(new Message(R_UPDATE_ENTITIES));
+        _cvarChangedId = _messageSystem.registerMessage(new Message(Singleton.CONSOLE_VARIABLE_CHANGED));
+        _renderSceneId = _messageSystem.registerMessage(new Message(R_RENDER_SCENE));
+        _updateEntitiesId = _messageSystem.registerMessage(new Message(R_UPDATE_ENTITIES));
+        _snapshotEntitiesId = _messageSystem.registerMessage(new Message(R_SNAPSHOT_ENTITIES));
         _messageSystem.registerMessage(new Message(Singleton.REMOVE_ALL_UI_ELEMENTS));
         _messageSystem.registerMessage(new Message(Singleton.REMOVE_ALL_PULSE_ENTITIES));
         _messageSystem.registerMessage(new Message(Singleton.REMOVE_ALL_RENDER_ENTITIES));
         _messageSystem.registerMessage(new Message(Singleton.PERFORM_SOFT_RESET));
+        _messageSystem.registerMessage(new Message(Singleton.PERFORM_WARM_RESET));
     }
 
     /**
@@ -257,7 +561,7 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
      */
     private void _registerPulseEntity(PulseEntity entity)
     {
-        _pulseEntities.add(entity);
+        if (!_pulseEntities.contains(entity)) _pulseEntities.add(entity);
     }
 
     private void _deregisterPulseEntity(PulseEntity entity)
@@ -266,6 +570,7 @@ public class Engine extends Application implements PulseEntity, MessageHandler {
     }
 
     public static void main(String[] args) {
+        _commandLineArgs = args;
         launch(args);
     }
 }
@@ -0,0 +1,14 @@
+package simulation.engine;
+
+/**
+ * Entry point for running the simulation without a display. This cannot
+ * live in Engine because the Java launcher starts the JavaFX toolkit (which
+ * needs a display) before calling main on any class that extends Application.
+ *
+ * Example: java simulation.engine.HeadlessMain +eng_headless_ticks=600000 +sim_start_speed=90
+ */
+public class HeadlessMain {
+    public static void main(String[] args) {
+        Engine.runHeadless(args);
+    }
+}
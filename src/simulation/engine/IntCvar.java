@@ -0,0 +1,27 @@
+package simulation.engine;
+
+/**
+ * Console variable handle for whole numbers (see CvarHandle)
+ */
+public final class IntCvar extends CvarHandle {
+    private int _value = -1;
+
+    IntCvar(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * @return value as an int, or -1 if it isn't one
+     */
+    public int get()
+    {
+        return _value;
+    }
+
+    @Override
+    void load(ConsoleVariable cvar)
+    {
+        _value = cvar == null ? -1 : cvar.getcvarAsInt();
+    }
+}
@@ -7,11 +7,23 @@ package simulation.engine;
  * is pressed down, we might register a "K_DOWN" message with
  * the MessagePump system.
  *
+ * Along with the Object data a message has double/long/int slots so that
+ * numbers can be passed around without boxing them. Messages handed out by
+ * MessagePump.obtainMessage() are pooled and reused once they have been
+ * dispatched, so handlers must never hold on to (or resend) the Message
+ * itself - copy whatever data is needed instead.
+ *
  * @author Justin Hall
  */
 public class Message {
     private String _msgName;
     private Object _msgData = null;
+    private int _msgId = -1; // Assigned by the MessagePump when registered/sent
+    private double _doubleData = 0.0;
+    private long _longData = 0;
+    private int _intData = 0;
+    private boolean _hasPrimitiveData = false;
+    private boolean _isPooled = false; // True if owned by a MessagePump's pool
 
     public Message(String msgName)
     {
@@ -32,6 +44,11 @@ public class Message {
     {
         _msgName = message._msgName;
         _msgData = message._msgData;
+        _msgId = message._msgId;
+        _doubleData = message._doubleData;
+        _longData = message._longData;
+        _intData = message._intData;
+        _hasPrimitiveData = message._hasPrimitiveData;
     }
 
     /**
@@ -44,6 +61,7 @@ public class Message {
     {
         _msgName = message.getMessageName();
         _msgData = msgData;
+        _msgId = message._msgId;
     }
 
     public final String getMessageName()
@@ -51,6 +69,21 @@ public class Message {
         return _msgName;
     }
 
+    /**
+     * @return the id the MessagePump gave this message type or -1 if it
+     *         has not been registered/sent yet
+     */
+    public final int getMessageId()
+    {
+        return _msgId;
+    }
+
+    // Package private - only the MessagePump hands out ids
+    void setMessageId(int id)
+    {
+        _msgId = id;
+    }
+
     /**
      * Determines whether the message contains associated data
      * or not. If false, it is expected that getMessageData() would
@@ -60,7 +93,7 @@ public class Message {
      */
     public boolean containsData()
     {
-        return _msgData != null;
+        return _msgData != null || _hasPrimitiveData;
     }
 
     /**
@@ -81,6 +114,106 @@ public class Message {
         return _msgData;
     }
 
+    /**
+     * @return the double slot, or the Object data as a double if it is a
+     *         Number (so senders that still box their data keep working)
+     */
+    public double getDoubleData()
+    {
+        if (_msgData instanceof Number) return ((Number)_msgData).doubleValue();
+        return _doubleData;
+    }
+
+    /**
+     * @return the long slot, or the Object data as a long if it is a Number
+     */
+    public long getLongData()
+    {
+        if (_msgData instanceof Number) return ((Number)_msgData).longValue();
+        return _longData;
+    }
+
+    /**
+     * @return the int slot, or the Object data as an int if it is a Number
+     */
+    public int getIntData()
+    {
+        if (_msgData instanceof Number) return ((Number)_msgData).intValue();
+        return _intData;
+    }
+
+    public void setMessageData(Object msgData)
+    {
+        _msgData = msgData;
+    }
+
+    public void setDoubleData(double data)
+    {
+        _doubleData = data;
+        _hasPrimitiveData = true;
+    }
+
+    public void setLongData(long data)
+    {
+        _longData = data;
+        _hasPrimitiveData = true;
+    }
+
+    public void setIntData(int data)
+    {
+        _intData = data;
+        _hasPrimitiveData = true;
+    }
+
+    /*
+     * The following are package private and only used by the SessionRecorder -
+     * unlike the getters above they never fall back to the Object data
+     */
+    boolean hasPrimitiveData()
+    {
+        return _hasPrimitiveData;
+    }
+
+    double getDoubleSlot()
+    {
+        return _doubleData;
+    }
+
+    long getLongSlot()
+    {
+        return _longData;
+    }
+
+    int getIntSlot()
+    {
+        return _intData;
+    }
+
+    /*
+     * The following are package private and only used by the MessagePump's pool
+     */
+    boolean isPooled()
+    {
+        return _isPooled;
+    }
+
+    void setPooled(boolean value)
+    {
+        _isPooled = value;
+    }
+
+    // Turns this into an empty message of the given type
+    void recycle(String msgName, int msgId)
+    {
+        _msgName = msgName;
+        _msgId = msgId;
+        _msgData = null;
+        _doubleData = 0.0;
+        _longData = 0;
+        _intData = 0;
+        _hasPrimitiveData = false;
+    }
+
     @Override
     public int hashCode() {
         return _msgName.hashCode();
@@ -1,8 +1,11 @@
 package simulation.engine;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The message pump is responsible for collecting messages
@@ -21,21 +24,75 @@ import java.util.Map;
  * to change any of the code which sends the messages and signals interest
  * in those messages.
  *
+ * Internally every registered message is given a compact integer id and
+ * handlers are stored in an array indexed by that id, so dispatching never
+ * has to hash the message name. The String-based methods are kept as a thin
+ * layer on top of the ids; code that sends a message every frame should hold
+ * on to the registered Message (or its id) and send copies of that instead
+ * of looking the name up again.
+ *
+ * Messages sent every frame should also come from the pump's pool (see
+ * obtainMessage and sendMessage(int, double)) and carry numbers in the
+ * primitive slots. Pooled messages are taken back as soon as they have been
+ * dispatched, so a steady-state frame does not allocate anything.
+ *
+ * Any thread may send messages (this is what makes the interfaces safe to
+ * call from a controller or I/O thread), but handlers are always called on
+ * the thread that dispatches, which is the engine's thread. Messages go into
+ * a bounded lock-free queue and the following is guaranteed:
+ *      1) Messages sent from the same thread are dispatched in the order
+ *         they were sent
+ *      2) Messages sent from different threads are dispatched in the order
+ *         their sendMessage calls took effect
+ *      3) A dispatch handles the messages that were sent before it started -
+ *         anything sent while it runs (including by handlers) waits for the
+ *         next dispatch
+ *
+ * If the queue is full a sending thread other than the dispatch thread waits
+ * until the next dispatch frees up space (see getOverflowCount). The dispatch
+ * thread cannot wait on itself, so it gets an IllegalStateException instead.
+ *
+ * Registering messages and signalling interest are meant for setup, so they
+ * lock, but they are still safe to call from any thread.
+ *
  * @author Justin Hall
  */
 public class MessagePump {
-    private final HashMap<String, Message> _registeredMessages = new HashMap<>();
-    private final HashMap<Message, LinkedList<MessageHandler>> _registeredHandlers = new HashMap<>();
-    private LinkedList<Message> _messageDispatchBuffer = new LinkedList<>();
-    private LinkedList<Message> _messageDispatchBackBuffer = new LinkedList<>();
+    public static final int DEFAULT_QUEUE_CAPACITY = 16384;
+    private static final MessageHandler[] NO_HANDLERS = new MessageHandler[0];
+    private static final int POOL_CAPACITY = 4096;
+    private final ConcurrentHashMap<String, Message> _registeredMessages = new ConcurrentHashMap<>();
+    // Both arrays are copied on write so that any thread can safely read them
+    private volatile Message[] _messagesById = new Message[0];
+    private volatile MessageHandler[][] _handlersById = new MessageHandler[0][];
+    private final MessageQueue _messageQueue;
+    private final MessageQueue _messagePool = new MessageQueue(POOL_CAPACITY);
+    private final AtomicLong _overflowCount = new AtomicLong(0);
+    private volatile Thread _dispatchThread = Thread.currentThread();
+    private SessionRecorder _recorder; // Only touched by the dispatch thread
+
+    public MessagePump()
+    {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity maximum number of messages that can wait for a dispatch
+     */
+    public MessagePump(int queueCapacity)
+    {
+        _messageQueue = new MessageQueue(queueCapacity);
+    }
 
     /**
      * Gets rid of all registered message handlers, meaning no references will
      * be kept to them
      */
-    public void clearAllMessageHandlers()
+    public synchronized void clearAllMessageHandlers()
     {
-        _registeredHandlers.clear();
+        MessageHandler[][] handlers = new MessageHandler[_handlersById.length][];
+        Arrays.fill(handlers, NO_HANDLERS);
+        _handlersById = handlers;
     }
 
     /**
@@ -50,7 +107,62 @@ public class MessagePump {
         {
             throw new IllegalArgumentException("Non-registered message passed into MessagePump.signalInterest");
         }
-        _registeredHandlers.get(getRegisteredMessage(message)).add(handler);
+        signalInterest(getMessageId(message), handler);
+    }
+
+    /**
+     * Equivalent to signalInterest(String, MessageHandler), but it takes the id
+     * returned by registerMessage/getMessageId
+     * @param messageId id of the message to receive event notifications for
+     * @param handler callback
+     */
+    public synchronized void signalInterest(int messageId, MessageHandler handler)
+    {
+        if (!_isValidId(messageId))
+        {
+            throw new IllegalArgumentException("Non-registered message id passed into MessagePump.signalInterest");
+        }
+        // Copy on write - signalling interest is rare compared to dispatching
+        MessageHandler[] handlers = _handlersById[messageId];
+        MessageHandler[] newHandlers = Arrays.copyOf(handlers, handlers.length + 1);
+        newHandlers[handlers.length] = handler;
+        MessageHandler[][] handlersById = _handlersById.clone();
+        handlersById[messageId] = newHandlers;
+        _handlersById = handlersById;
+    }
+
+    /**
+     * Stops sending the given message to the handler - does nothing if it never
+     * signalled interest
+     * @param message message to stop receiving event notifications for
+     * @param handler callback passed to signalInterest
+     */
+    public void removeInterest(String message, MessageHandler handler)
+    {
+        int messageId = getMessageId(message);
+        if (messageId >= 0) removeInterest(messageId, handler);
+    }
+
+    /**
+     * Equivalent to removeInterest(String, MessageHandler), but it takes the id
+     * returned by registerMessage/getMessageId
+     */
+    public synchronized void removeInterest(int messageId, MessageHandler handler)
+    {
+        if (!_isValidId(messageId)) return;
+        MessageHandler[] handlers = _handlersById[messageId];
+        for (int i = 0; i < handlers.length; ++i)
+        {
+            if (handlers[i] != handler) continue;
+            // Copy on write, same as signalInterest
+            MessageHandler[] newHandlers = new MessageHandler[handlers.length - 1];
+            System.arraycopy(handlers, 0, newHandlers, 0, i);
+            System.arraycopy(handlers, i + 1, newHandlers, i, handlers.length - i - 1);
+            MessageHandler[][] handlersById = _handlersById.clone();
+            handlersById[messageId] = newHandlers.length == 0 ? NO_HANDLERS : newHandlers;
+            _handlersById = handlersById;
+            return;
+        }
     }
 
     /**
@@ -58,25 +170,44 @@ public class MessagePump {
      * should expect messages of its type fo be written in the future.
      *
      * @param message message to register
+     * @return the id of the message, which is the same every time the same message is registered
      */
-    public void registerMessage(Message message)
+    public synchronized int registerMessage(Message message)
     {
         // Only add it if it has not been added yet
-        if (!_registeredMessages.containsKey(message.getMessageName()))
+        Message registered = _registeredMessages.get(message.getMessageName());
+        if (registered != null)
         {
-            System.out.println("Registering message type (" + message.getMessageName() + ")");
-            _registeredMessages.put(message.getMessageName(), message);
-            _registeredHandlers.put(message, new LinkedList<>());
+            message.setMessageId(registered.getMessageId());
+            return registered.getMessageId();
         }
+        System.out.println("Registering message type (" + message.getMessageName() + ")");
+        int id = _messagesById.length;
+        message.setMessageId(id);
+        MessageHandler[][] handlersById = Arrays.copyOf(_handlersById, id + 1);
+        handlersById[id] = NO_HANDLERS;
+        Message[] messagesById = Arrays.copyOf(_messagesById, id + 1);
+        messagesById[id] = message;
+        _handlersById = handlersById;
+        _messagesById = messagesById;
+        _registeredMessages.put(message.getMessageName(), message);
+        return id;
     }
 
     /**
-     * Removes a message from the message pump
+     * Removes a message from the message pump. Its id will not be handed
+     * out again.
      */
-    public void unregisterMessage(Message message)
+    public synchronized void unregisterMessage(Message message)
     {
-        _registeredMessages.remove(message.getMessageName());
-        _registeredHandlers.remove(message);
+        Message registered = _registeredMessages.remove(message.getMessageName());
+        if (registered == null) return;
+        Message[] messagesById = _messagesById.clone();
+        messagesById[registered.getMessageId()] = null;
+        _messagesById = messagesById;
+        MessageHandler[][] handlersById = _handlersById.clone();
+        handlersById[registered.getMessageId()] = NO_HANDLERS;
+        _handlersById = handlersById;
     }
 
     /**
@@ -87,6 +218,25 @@ public class MessagePump {
         return _registeredMessages.get(message);
     }
 
+    /**
+     * Converts an id to a registered Message object
+     * @return registered message or null if the id is not registered
+     */
+    public Message getRegisteredMessage(int messageId)
+    {
+        return _isValidId(messageId) ? _messagesById[messageId] : null;
+    }
+
+    /**
+     * Converts a String to the id given out by registerMessage
+     * @return id of the message or -1 if it has not been registered
+     */
+    public int getMessageId(String message)
+    {
+        Message registered = _registeredMessages.get(message);
+        return registered == null ? -1 : registered.getMessageId();
+    }
+
     /**
      * Retrieves a list of all messages currently registered by the MessagePump.
      * @return list of messages
@@ -128,6 +278,14 @@ public class MessagePump {
         return _registeredMessages.size();
     }
 
+    /**
+     * @return number of times a sender found the queue full
+     */
+    public long getOverflowCount()
+    {
+        return _overflowCount.get();
+    }
+
     /**
      * Notifies the system that you want to send a message to anyone interested
      * in receiving and processing it.
@@ -136,11 +294,18 @@ public class MessagePump {
     public void sendMessage(Message message)
     {
         //System.out.println("Sending message: " + message.getMessageName());
-        if (!_registeredMessages.containsKey(message.getMessageName()))
+        // Messages copied from a registered message already carry their id, anything
+        // else (or anything carrying an id from a previous message pump) is looked up once
+        if (!_hasValidId(message))
         {
-            throw new IllegalArgumentException("Non-registered message passed into MessagePump");
+            Message registered = _registeredMessages.get(message.getMessageName());
+            if (registered == null)
+            {
+                throw new IllegalArgumentException("Non-registered message passed into MessagePump");
+            }
+            message.setMessageId(registered.getMessageId());
         }
-        _messageDispatchBuffer.add(message);
+        _enqueue(message);
     }
 
     /**
@@ -153,24 +318,158 @@ public class MessagePump {
         sendMessage(getRegisteredMessage(message));
     }
 
+    /**
+     * Sends the registered message with the given id (without any data)
+     * @param messageId id returned by registerMessage/getMessageId
+     */
+    public void sendMessage(int messageId)
+    {
+        if (!_isValidId(messageId))
+        {
+            throw new IllegalArgumentException("Non-registered message id passed into MessagePump");
+        }
+        _enqueue(_messagesById[messageId]);
+    }
+
+    /**
+     * Hands out an empty message of the given type from the pool. Fill in its
+     * data and pass it to sendMessage - it is returned to the pool automatically
+     * once it has been dispatched, so do not keep a reference to it.
+     * @param messageId id returned by registerMessage/getMessageId
+     * @return pooled message ready to be filled in and sent
+     */
+    public Message obtainMessage(int messageId)
+    {
+        Message[] messagesById = _messagesById;
+        if (messageId < 0 || messageId >= messagesById.length || messagesById[messageId] == null)
+        {
+            throw new IllegalArgumentException("Non-registered message id passed into MessagePump.obtainMessage");
+        }
+        Message message = _messagePool.poll();
+        if (message == null)
+        {
+            message = new Message("");
+            message.setPooled(true);
+        }
+        message.recycle(messagesById[messageId].getMessageName(), messageId);
+        return message;
+    }
+
+    /**
+     * Sends a pooled message with the given double as its data (no boxing)
+     * @param messageId id returned by registerMessage/getMessageId
+     * @param data value readable through Message.getDoubleData()
+     */
+    public void sendMessage(int messageId, double data)
+    {
+        Message message = obtainMessage(messageId);
+        message.setDoubleData(data);
+        _enqueue(message);
+    }
+
+    /**
+     * Sends a pooled message with the given Object as its data
+     * @param messageId id returned by registerMessage/getMessageId
+     * @param data object readable through Message.getMessageData()
+     */
+    public void sendMessage(int messageId, Object data)
+    {
+        Message message = obtainMessage(messageId);
+        message.setMessageData(data);
+        _enqueue(message);
+    }
+
+    /**
+     * Equivalent to sendMessage(int, double) for code without a message id
+     * @param message name of a registered message
+     * @param data value readable through Message.getDoubleData()
+     */
+    public void sendMessage(String message, double data)
+    {
+        int id = getMessageId(message);
+        if (id < 0)
+        {
+            throw new IllegalArgumentException("Non-registered message passed into MessagePump");
+        }
+        sendMessage(id, data);
+    }
+
+    /**
+     * Every message dispatched from now on is also written to the recorder
+     * @param recorder recorder to write to or null to stop recording
+     */
+    void setRecorder(SessionRecorder recorder)
+    {
+        _recorder = recorder;
+    }
+
     /**
      * If you are not the simulation.engine then it is best not to call this
      */
     void dispatchMessages()
     {
-        // We swap these buffers to allow new messages to be added while dispatch
-        // is taking place
-        LinkedList<Message> buffer = _messageDispatchBuffer;
-        _messageDispatchBuffer = _messageDispatchBackBuffer;
-        _messageDispatchBuffer.clear();
-        _messageDispatchBackBuffer = buffer;
-        for (Message msg : buffer)
+        _dispatchThread = Thread.currentThread();
+        SessionRecorder recorder = _recorder;
+        // Only dispatch what was sent before we started - anything sent from here
+        // on (including by the handlers) waits for the next dispatch
+        long end = _messageQueue.getTailPosition();
+        // A handler may dispatch again (soft reset), which moves the head past end
+        while (_messageQueue.getHeadPosition() < end)
         {
-            LinkedList<MessageHandler> interested = _registeredHandlers.get(msg);
-            for (MessageHandler handler : interested)
+            Message msg = _messageQueue.poll();
+            if (msg == null)
+            {
+                // A producer has claimed this slot but has not finished writing to it
+                Thread.onSpinWait();
+                continue;
+            }
+            if (recorder != null) recorder.record(msg);
+            MessageHandler[] interested = _handlersById[msg.getMessageId()];
+            for (int i = 0; i < interested.length; ++i)
             {
-                handler.handleMessage(msg);
+                interested[i].handleMessage(msg);
             }
+            // Everyone has seen it, so a pooled message can be reused
+            if (msg.isPooled()) _releaseMessage(msg);
         }
     }
+
+    private void _enqueue(Message message)
+    {
+        if (_messageQueue.offer(message)) return;
+        _overflowCount.incrementAndGet();
+        if (Thread.currentThread() == _dispatchThread)
+        {
+            throw new IllegalStateException("MessagePump queue overflow (" + _messageQueue.capacity() +
+                    " messages) on the dispatch thread");
+        }
+        // Wait for the dispatch thread to make room
+        int attempts = 0;
+        while (!_messageQueue.offer(message))
+        {
+            if (++attempts < 100) Thread.onSpinWait();
+            else LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private void _releaseMessage(Message message)
+    {
+        message.recycle("", -1);
+        _messagePool.offer(message); // If the pool is full it is left for the garbage collector
+    }
+
+    private boolean _isValidId(int messageId)
+    {
+        Message[] messagesById = _messagesById;
+        return messageId >= 0 && messageId < messagesById.length && messagesById[messageId] != null;
+    }
+
+    // Makes sure the id was handed out by this message pump for this message name
+    private boolean _hasValidId(Message message)
+    {
+        int id = message.getMessageId();
+        Message[] messagesById = _messagesById;
+        return id >= 0 && id < messagesById.length && messagesById[id] != null &&
+                messagesById[id].getMessageName().equals(message.getMessageName());
+    }
 }
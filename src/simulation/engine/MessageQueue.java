@@ -0,0 +1,112 @@
+package simulation.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue of messages which any number of threads can
+ * add to and take from at the same time without allocating anything. The
+ * MessagePump uses it both as the queue behind sendMessage (many producers,
+ * one dispatching consumer) and as its pool of reusable messages.
+ *
+ * Every slot has a sequence number which tells producers and consumers whose
+ * turn it is to use the slot, so the only contended operation is a single
+ * compare-and-set on the head or tail position (see Dmitry Vyukov's bounded
+ * MPMC queue).
+ */
+final class MessageQueue {
+    private final Message[] _buffer;
+    private final AtomicLongArray _sequences;
+    private final int _mask;
+    private final AtomicLong _head = new AtomicLong(0); // Next position to take from
+    private final AtomicLong _tail = new AtomicLong(0); // Next position to add to
+
+    /**
+     * @param capacity maximum number of messages - rounded up to a power of two
+     */
+    MessageQueue(int capacity)
+    {
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        _buffer = new Message[size];
+        _sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) _sequences.set(i, i);
+        _mask = size - 1;
+    }
+
+    /**
+     * Adds the message to the end of the queue
+     * @return true if it was added and false if the queue is full
+     */
+    boolean offer(Message message)
+    {
+        long position = _tail.get();
+        while (true)
+        {
+            int index = (int)position & _mask;
+            long difference = _sequences.get(index) - position;
+            if (difference == 0)
+            {
+                // The slot is free - try to claim it
+                if (_tail.compareAndSet(position, position + 1))
+                {
+                    _buffer[index] = message;
+                    _sequences.lazySet(index, position + 1); // Publish it
+                    return true;
+                }
+                position = _tail.get();
+            }
+            else if (difference < 0) return false; // Full
+            else position = _tail.get(); // Another producer got here first
+        }
+    }
+
+    /**
+     * Removes the message at the front of the queue
+     * @return the message or null if the queue is empty (or the message at the
+     *         front has been claimed but not fully added yet)
+     */
+    Message poll()
+    {
+        long position = _head.get();
+        while (true)
+        {
+            int index = (int)position & _mask;
+            long difference = _sequences.get(index) - (position + 1);
+            if (difference == 0)
+            {
+                if (_head.compareAndSet(position, position + 1))
+                {
+                    Message message = _buffer[index];
+                    _buffer[index] = null;
+                    _sequences.lazySet(index, position + _buffer.length); // Free the slot for the next lap
+                    return message;
+                }
+                position = _head.get();
+            }
+            else if (difference < 0) return null; // Empty
+            else position = _head.get(); // Another consumer got here first
+        }
+    }
+
+    /**
+     * @return total number of messages ever claimed by producers
+     */
+    long getTailPosition()
+    {
+        return _tail.get();
+    }
+
+    /**
+     * @return total number of messages ever taken by consumers
+     */
+    long getHeadPosition()
+    {
+        return _head.get();
+    }
+
+    int capacity()
+    {
+        return _buffer.length;
+    }
+}
@@ -10,8 +10,19 @@ import simulation.engine.math.Vector3;
  * @author Justin Hall
  */
 public abstract class RenderEntity extends ActorGraph implements PulseEntity {
-    private String _texture;
+    private int _textureHandle = TextureAtlas.NO_TEXTURE; // See TextureAtlas
     private Color _color = Color.RED;
+    // Where the renderer's DrawList has this entity filed (null if it isn't in one)
+    private DrawList _drawList;
+    private long _drawSequence;
+    private int _drawKey;
+    // Where the renderer's SpatialIndex has this entity filed (null if it isn't in one)
+    private SpatialIndex _spatialIndex;
+    private boolean _isFiledAsStatic;
+    private int _firstCell;
+    private int _lastCell;
+    private int _queryStamp;
+    private int _visibleStamp; // Last frame the renderer found this entity on screen
 
     /**
      * This function ensures that the render entity is added to the world. After
@@ -34,10 +45,13 @@ public abstract class RenderEntity extends ActorGraph implements PulseEntity {
         Engine.getMessagePump().sendMessage(new Message(Singleton.REMOVE_RENDER_ENTITY, this));
     }
 
+    /**
+     * @param texture file to draw this entity with - it is loaded by the renderer the
+     *                first time any entity uses it
+     */
     public void setTexture(String texture)
     {
-        _texture = texture;
-        Engine.getMessagePump().sendMessage(new Message(Singleton.REGISTER_TEXTURE, texture));
+        _textureHandle = Engine.getTextureAtlas().getHandle(texture);
     }
 
     public void setColor(Color color)
@@ -47,11 +61,110 @@ public abstract class RenderEntity extends ActorGraph implements PulseEntity {
 
     public String getTexture()
     {
-        return _texture;
+        return _textureHandle == TextureAtlas.NO_TEXTURE ? null : Engine.getTextureAtlas().getName(_textureHandle);
     }
 
     public Color getColor()
     {
         return _color;
     }
+
+    /*
+     * The following are package private and used by Animation, DrawList, SpatialIndex and Renderer
+     */
+    void setTextureHandle(int handle)
+    {
+        _textureHandle = handle;
+    }
+
+    int getTextureHandle()
+    {
+        return _textureHandle;
+    }
+
+    @Override
+    void depthChanged()
+    {
+        if (_drawList != null) _drawList.depthChanged(this);
+    }
+
+    void setDrawList(DrawList drawList, long sequence, int key)
+    {
+        _drawList = drawList;
+        _drawSequence = sequence;
+        _drawKey = key;
+    }
+
+    DrawList getDrawList()
+    {
+        return _drawList;
+    }
+
+    long getDrawSequence()
+    {
+        return _drawSequence;
+    }
+
+    int getDrawKey()
+    {
+        return _drawKey;
+    }
+
+    @Override
+    void boundsChanged()
+    {
+        if (_spatialIndex != null) _spatialIndex.boundsChanged(this);
+    }
+
+    void setSpatialIndex(SpatialIndex spatialIndex)
+    {
+        _spatialIndex = spatialIndex;
+    }
+
+    SpatialIndex getSpatialIndex()
+    {
+        return _spatialIndex;
+    }
+
+    void setCells(boolean isStatic, int firstCell, int lastCell)
+    {
+        _isFiledAsStatic = isStatic;
+        _firstCell = firstCell;
+        _lastCell = lastCell;
+    }
+
+    boolean isFiledAsStatic()
+    {
+        return _isFiledAsStatic;
+    }
+
+    int getFirstCell()
+    {
+        return _firstCell;
+    }
+
+    int getLastCell()
+    {
+        return _lastCell;
+    }
+
+    void setQueryStamp(int stamp)
+    {
+        _queryStamp = stamp;
+    }
+
+    int getQueryStamp()
+    {
+        return _queryStamp;
+    }
+
+    void setVisibleStamp(int stamp)
+    {
+        _visibleStamp = stamp;
+    }
+
+    int getVisibleStamp()
+    {
+        return _visibleStamp;
+    }
 }
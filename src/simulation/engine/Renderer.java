@@ -3,7 +3,6 @@ package simulation.engine;
 import javafx.geometry.Point3D;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.paint.Color;
 import javafx.scene.transform.Rotate;
 import simulation.engine.math.Vector3;
@@ -13,27 +12,63 @@ import java.util.*;
 /**
  * The renderer manages all drawable entities in the scene and also
  * simulates their movement based on location, speed and acceleration.
- * Along with this, all textures are cached as needed by this class
- * for fast lookup later on.
+ * Along with this, all textures are loaded as needed by this class
+ * and packed into a TextureAtlas for fast lookup later on.
  *
  * The movement simulation and rendering are two distinct stages of
  * the rendering pipeline which are triggered by separate engine messages.
  * This means that disabling one or the other or both is very easy.
  *
+ * Since several simulation steps can happen per drawn frame (or none at all),
+ * every entity's translation is remembered at the start of each step and the
+ * scene is drawn interpolated between that and the current translation.
+ *
+ * The draw order is kept in a DrawList which only re-sorts entities whose depth
+ * changed, and entities at the same depth are always drawn in the order they
+ * were added. Each frame only the entities a SpatialIndex finds near the camera
+ * are bounds tested, so the cost of drawing depends on what is on screen rather
+ * than on how big the world is.
+ *
  * @author Justin Hall
  */
 public class Renderer implements MessageHandler {
+    private static final Color PLACEHOLDER_COLOR = Color.LIGHTGRAY;
+
     private GraphicsContext _gc;
-    private HashMap<String, ImageView> _textures = new HashMap<>();
-    private HashSet<RenderEntity> _entities = new HashSet<>();
+    private TextureAtlas _textures = Engine.getTextureAtlas();
+    private LinkedHashSet<RenderEntity> _entities = new LinkedHashSet<>();
     private HashSet<ActorGraph> _rootSet = new HashSet<>();
-    private TreeMap<Integer, ArrayList<RenderEntity>> _drawOrder = new TreeMap<>();
+    private DrawList _drawOrder = new DrawList();
+    private SpatialIndex _spatialIndex; // See _getSpatialIndex
+    private int _spatialIndexVersion; // World bounds versions it was built with
+    // Kept out of the spatial index - their decals are spread along the world, so
+    // they are culled a decal at a time (see _drawDecals) rather than as a whole
+    private ArrayList<DecalLayer> _decalLayers = new ArrayList<>();
+    private ArrayList<RenderEntity> _nearbyEntities = new ArrayList<>();
+    private ArrayList<RenderEntity> _visibleEntities = new ArrayList<>();
+    // Whatever was on screen last frame (and anything added since) - these are the only
+    // entities which might need to be told they are no longer visible
+    private ArrayList<RenderEntity> _previouslyVisibleEntities = new ArrayList<>();
+    private int _frame = 0;
+    // Same order as the DrawList: furthest back depth first, then the order they were added
+    private static final Comparator<RenderEntity> DRAW_ORDER = (a, b) ->
+            a.getDrawKey() != b.getDrawKey() ? Integer.compare(a.getDrawKey(), b.getDrawKey()) :
+                    Long.compare(a.getDrawSequence(), b.getDrawSequence());
     private Camera _worldCamera = new Camera(); // Start with a default camera
+    private final IntCvar _screenWidth = Engine.getConsoleVariables().findInt(Singleton.SCR_WIDTH);
+    private final IntCvar _screenHeight = Engine.getConsoleVariables().findInt(Singleton.SCR_HEIGHT);
+    private final IntCvar _worldStartX = Engine.getConsoleVariables().findInt(Singleton.WORLD_START_X);
+    private final IntCvar _worldStartY = Engine.getConsoleVariables().findInt(Singleton.WORLD_START_Y);
+    private final IntCvar _worldWidth = Engine.getConsoleVariables().findInt(Singleton.WORLD_WIDTH);
+    private final IntCvar _worldHeight = Engine.getConsoleVariables().findInt(Singleton.WORLD_HEIGHT);
     private Rotate _rotation = new Rotate(0);
 
     public void init(GraphicsContext gc)
     {
         _gc = gc;
+        // Rebuilt with the (possibly reloaded) world bounds the next time it's needed
+        if (_spatialIndex != null) _spatialIndex.clear();
+        _spatialIndex = null;
         _rotation.setAxis(new Point3D(0, 0, 1)); // In 2D we rotate about the z-axis
         // Signal interest
         Engine.getMessagePump().signalInterest(Singleton.ADD_RENDER_ENTITY, this);
@@ -42,6 +77,7 @@ public class Renderer implements MessageHandler {
         Engine.getMessagePump().signalInterest(Singleton.SET_MAIN_CAMERA, this);
         Engine.getMessagePump().signalInterest(Engine.R_RENDER_SCENE, this);
         Engine.getMessagePump().signalInterest(Engine.R_UPDATE_ENTITIES, this);
+        Engine.getMessagePump().signalInterest(Engine.R_SNAPSHOT_ENTITIES, this);
         Engine.getMessagePump().signalInterest(Singleton.REMOVE_ALL_RENDER_ENTITIES, this);
     }
 
@@ -50,35 +86,53 @@ public class Renderer implements MessageHandler {
         switch (message.getMessageName())
         {
             case Engine.R_RENDER_SCENE:
-                _render((Double)message.getMessageData());
+                _render(message.getDoubleData());
                 break;
             case Engine.R_UPDATE_ENTITIES:
-                _updateEntities((Double)message.getMessageData());
+                updateEntities(message.getDoubleData());
+                break;
+            case Engine.R_SNAPSHOT_ENTITIES:
+                for (RenderEntity entity : _entities) entity.savePreviousTranslation();
                 break;
             case Singleton.ADD_RENDER_ENTITY:
-                _entities.add((RenderEntity)message.getMessageData());
+            {
+                // Don't interpolate from wherever the entity was before it was added
+                RenderEntity entity = (RenderEntity)message.getMessageData();
+                entity.savePreviousTranslation();
+                _entities.add(entity);
+                _drawOrder.add(entity);
+                if (entity instanceof DecalLayer)
+                {
+                    if (!_decalLayers.contains(entity)) _decalLayers.add((DecalLayer)entity);
+                }
+                else
+                {
+                    _getSpatialIndex().add(entity);
+                }
+                _previouslyVisibleEntities.add(entity);
                 break;
+            }
             case Singleton.REMOVE_RENDER_ENTITY:
-                _entities.remove((RenderEntity)message.getMessageData());
+            {
+                RenderEntity entity = (RenderEntity)message.getMessageData();
+                _entities.remove(entity);
+                _drawOrder.remove(entity);
+                _decalLayers.remove(entity);
+                _getSpatialIndex().remove(entity);
                 break;
+            }
             case Singleton.REMOVE_ALL_RENDER_ENTITIES:
                 _entities.clear();
+                _drawOrder.clear();
+                _getSpatialIndex().clear();
+                _decalLayers.clear();
+                _visibleEntities.clear();
+                _previouslyVisibleEntities.clear();
                 break;
-            case Singleton.REGISTER_TEXTURE: {
-                String texture = (String)message.getMessageData();
-                if (!_textures.containsKey(texture)) {
-                    try {
-                        System.out.println("Registering " + texture);
-                        Image image = new Image(texture);
-                        ImageView imageView = new ImageView(image);
-                        imageView.setRotationAxis(new Point3D(0.0, 0.0, 1.0));
-                        _textures.put((String) message.getMessageData(), imageView);
-                    } catch (Exception e) {
-                        System.err.println("ERROR: Unable to load " + texture);
-                    }
-                }
+            case Singleton.REGISTER_TEXTURE:
+                // Starts loading in the background
+                _textures.getHandle((String)message.getMessageData());
                 break;
-            }
             case Singleton.SET_MAIN_CAMERA:
                 _worldCamera = (Camera)message.getMessageData();
                 break;
@@ -86,80 +140,195 @@ public class Renderer implements MessageHandler {
         }
     }
 
-    private void _render(double deltaSeconds)
+    // alpha is how far (0.0 to 1.0) between the previous and current step to draw everything
+    private void _render(double alpha)
     {
         // Clear the screen
+        int screenWidth = _screenWidth.get();
+        int screenHeight = _screenHeight.get();
         _gc.setFill(Color.WHITE);
-        _gc.fillRect(0, 0,
-                Engine.getConsoleVariables().find(Singleton.SCR_WIDTH).getcvarAsFloat(),
-                Engine.getConsoleVariables().find(Singleton.SCR_HEIGHT).getcvarAsFloat());
+        _gc.fillRect(0, 0, screenWidth, screenHeight);
 
-        // Reorder scene as needed so things are drawn in the proper order
-        _determineDrawOrder();
         // What values to offset everything in the world by to
         // determine camera-space coordinates
-        double xOffset;
-        double yOffset;
-        Vector3 translate = _worldCamera.getWorldTranslate();
-        xOffset = translate.x();
-        yOffset = translate.y();
-        // Now transform everyone to camera space and determine if they
-        // are visible and need to be drawn
+        Vector3 translate = _worldCamera.getWorldTranslate(alpha);
+        double xOffset = translate.x();
+        double yOffset = translate.y();
+        _textures.packPending();
+        determineVisibleEntities(alpha, xOffset, yOffset, screenWidth, screenHeight);
+        // Now draw everyone who made it on screen
         double screenX;
         double screenY;
-        double rotation;
         double width;
         double height;
+        for (int i = 0; i < _visibleEntities.size(); ++i)
+        {
+            RenderEntity entity = _visibleEntities.get(i);
+            if (entity instanceof DecalLayer)
+            {
+                _drawDecals((DecalLayer)entity, xOffset, yOffset, screenWidth, screenHeight);
+                continue;
+            }
+            Vector3 location = entity.getTranslationVec();
+            Vector3 previous = entity.getPreviousTranslationVec();
+            boolean isStatic = entity.isStaticActor();
+            screenX = previous.x() + (location.x() - previous.x()) * alpha + (isStatic ? 0 : xOffset);
+            screenY = previous.y() + (location.y() - previous.y()) * alpha + (isStatic ? 0 : yOffset);
+            width = entity.getWidth();
+            height = entity.getHeight();
+            _rotation.setAngle(entity.getRotation());
+            _rotation.setPivotX(screenX + width / 2);
+            _rotation.setPivotY(screenY + height / 2);
+            // See https://stackoverflow.com/questions/18260421/how-to-draw-image-rotated-on-javafx-canvas
+            _gc.setTransform(_rotation.getMxx(), _rotation.getMyx(),
+                    _rotation.getMxy(), _rotation.getMyy(), _rotation.getTx(), _rotation.getTy());
+            int texture = entity.getTextureHandle();
+            Image image = _textures.getImage(texture);
+            if (image != null)
+            {
+                _gc.drawImage(image, _textures.getRegionX(texture), _textures.getRegionY(texture),
+                        _textures.getRegionWidth(texture), _textures.getRegionHeight(texture),
+                        screenX, screenY, width, height);
+            }
+            else
+            {
+                // Textures which are still loading get a placeholder
+                _gc.setFill(_textures.isPending(texture) ? PLACEHOLDER_COLOR : entity.getColor());
+                _gc.fillRect(screenX, screenY, width, height);
+            }
+        }
+    }
+
+    // Draws every decal of the layer which is on screen in one pass
+    private void _drawDecals(DecalLayer layer, double xOffset, double yOffset, int screenWidth, int screenHeight)
+    {
+        if (layer.isStaticActor())
+        {
+            xOffset = 0;
+            yOffset = 0;
+        }
+        _gc.setTransform(1, 0, 0, 1, 0, 0); // Decals are never rotated
+        int numDecals = layer.getNumDecals();
+        for (int decal = 0; decal < numDecals; ++decal)
+        {
+            double screenX = layer.getDecalX(decal) + xOffset;
+            double screenY = layer.getDecalY(decal) + yOffset;
+            double width = layer.getDecalWidth(decal);
+            double height = layer.getDecalHeight(decal);
+            if (screenX + width < 0 || screenX > screenWidth || screenY + height < 0 || screenY > screenHeight) continue;
+            int texture = layer.getDecalTextureHandle(decal);
+            Image image = _textures.getImage(texture);
+            if (image != null)
+            {
+                _gc.drawImage(image, _textures.getRegionX(texture), _textures.getRegionY(texture),
+                        _textures.getRegionWidth(texture), _textures.getRegionHeight(texture),
+                        screenX, screenY, width, height);
+            }
+            else
+            {
+                // Textures which are still loading get a placeholder
+                _gc.setFill(_textures.isPending(texture) ? PLACEHOLDER_COLOR : layer.getColor());
+                _gc.fillRect(screenX, screenY, width, height);
+            }
+        }
+    }
+
+    /**
+     * Finds the entities which are on screen, puts them in draw order and updates
+     * everyone's screen visibility. Only the entities near the camera (see SpatialIndex)
+     * are looked at - anything which was on screen last frame but isn't near the camera
+     * any more is marked as not visible.
+     *
+     * Package private so that the benchmarks can call it directly
+     */
+    void determineVisibleEntities(double alpha, double xOffset, double yOffset, int screenWidth, int screenHeight)
+    {
+        // Reorder scene as needed so things are drawn in the proper order
+        determineDrawOrder();
+        _nearbyEntities.clear();
+        _getSpatialIndex().query(-xOffset, -xOffset + screenWidth, _nearbyEntities);
+        int frame = ++_frame;
+        _visibleEntities.clear();
+        double screenX;
+        double screenY;
         Vector3 location;
-        int screenWidth = Engine.getConsoleVariables().find(Singleton.SCR_WIDTH).getcvarAsInt();
-        int screenHeight = Engine.getConsoleVariables().find(Singleton.SCR_HEIGHT).getcvarAsInt();
-        for (Map.Entry<Integer, ArrayList<RenderEntity>> entry : _drawOrder.entrySet())
+        Vector3 previous;
+        for (int i = 0; i < _nearbyEntities.size(); ++i)
         {
-            for (RenderEntity entity : entry.getValue())
+            RenderEntity entity = _nearbyEntities.get(i);
+            location = entity.getTranslationVec();
+            previous = entity.getPreviousTranslationVec();
+            boolean isStatic = entity.isStaticActor();
+            screenX = previous.x() + (location.x() - previous.x()) * alpha + (isStatic ? 0 : xOffset);
+            screenY = previous.y() + (location.y() - previous.y()) * alpha + (isStatic ? 0 : yOffset);
+            if (screenX + entity.getWidth() < 0 || screenX > screenWidth ||
+                    screenY + entity.getHeight() < 0 || screenY > screenHeight)
             {
-                location = entity.getTranslationVec();
-                boolean isStatic = entity.isStaticActor();
-                screenX = location.x() + (isStatic ? 0 : xOffset);
-                screenY = location.y() + (isStatic ? 0 : yOffset);
-                width = entity.getWidth();
-                height = entity.getHeight();
-                rotation = entity.getRotation();
-                if (screenX + width < 0 || screenX > screenWidth ||
-                        screenY + height < 0 || screenY > screenHeight)
-                {
-                    entity.setScreenVisibility(false);
-                }
-                else
+                entity.setScreenVisibility(false);
+            }
+            else
+            {
+                entity.setScreenVisibility(true);
+                entity.setVisibleStamp(frame);
+                _visibleEntities.add(entity);
+            }
+        }
+        for (int i = 0; i < _decalLayers.size(); ++i)
+        {
+            DecalLayer layer = _decalLayers.get(i);
+            layer.setScreenVisibility(true);
+            layer.setVisibleStamp(frame);
+            _visibleEntities.add(layer);
+        }
+        for (int i = 0; i < _previouslyVisibleEntities.size(); ++i)
+        {
+            RenderEntity entity = _previouslyVisibleEntities.get(i);
+            if (entity.getVisibleStamp() != frame) entity.setScreenVisibility(false);
+        }
+        _previouslyVisibleEntities.clear();
+        _previouslyVisibleEntities.addAll(_visibleEntities);
+        _visibleEntities.sort(DRAW_ORDER);
+    }
+
+    /**
+     * @return what the last call to determineVisibleEntities found, in draw order
+     */
+    ArrayList<RenderEntity> getVisibleEntities()
+    {
+        return _visibleEntities;
+    }
+
+    // Created on first use so the world bounds have been loaded, and built again
+    // if they change
+    private SpatialIndex _getSpatialIndex()
+    {
+        int worldVersion = _worldStartX.getVersion() + _worldWidth.getVersion();
+        if (_spatialIndex == null || worldVersion != _spatialIndexVersion)
+        {
+            SpatialIndex spatialIndex = new SpatialIndex(_worldStartX.get(), _worldWidth.get());
+            if (_spatialIndex != null)
+            {
+                for (RenderEntity entity : _entities)
                 {
-                    entity.setScreenVisibility(true);
-                    _rotation.setAngle(rotation);
-                    _rotation.setPivotX(screenX + width / 2);
-                    _rotation.setPivotY(screenY + height / 2);
-                    // See https://stackoverflow.com/questions/18260421/how-to-draw-image-rotated-on-javafx-canvas
-                    _gc.setTransform(_rotation.getMxx(), _rotation.getMyx(),
-                            _rotation.getMxy(), _rotation.getMyy(), _rotation.getTx(), _rotation.getTy());
-                    if (_textures.containsKey(entity.getTexture()))
-                    {
-                        ImageView imageView = _textures.get(entity.getTexture());
-                        _gc.drawImage(imageView.getImage(), screenX, screenY, width, height);
-                    }
-                    else
-                    {
-                        _gc.setFill(entity.getColor());
-                        _gc.fillRect(screenX, screenY, width, height);
-                    }
+                    if (entity instanceof DecalLayer) continue;
+                    _spatialIndex.remove(entity);
+                    spatialIndex.add(entity);
                 }
             }
+            _spatialIndex = spatialIndex;
+            _spatialIndexVersion = worldVersion;
         }
+        return _spatialIndex;
     }
 
-    private void _updateEntities(double deltaSeconds)
+    // Package private so that the benchmarks can call it directly
+    void updateEntities(double deltaSeconds)
     {
         _rootSet.clear();
-        int worldStartX = Engine.getConsoleVariables().find(Singleton.WORLD_START_X).getcvarAsInt();
-        int worldStartY = Engine.getConsoleVariables().find(Singleton.WORLD_START_Y).getcvarAsInt();
-        int worldWidth = Engine.getConsoleVariables().find(Singleton.WORLD_WIDTH).getcvarAsInt();
-        int worldHeight = Engine.getConsoleVariables().find(Singleton.WORLD_HEIGHT).getcvarAsInt();
+        int worldStartX = _worldStartX.get();
+        int worldStartY = _worldStartY.get();
+        int worldWidth = _worldWidth.get();
+        int worldHeight = _worldHeight.get();
         // Account for the fact that worldStartX/worldStartY may not simply be 0
         worldWidth += worldStartX;
         worldHeight += worldStartY;
@@ -217,24 +386,10 @@ public class Renderer implements MessageHandler {
         }
     }
 
-    private void _determineDrawOrder()
+    // Package private so that the benchmarks can call it directly
+    void determineDrawOrder()
     {
-        for (Map.Entry<Integer, ArrayList<RenderEntity>> entry : _drawOrder.entrySet())
-        {
-            entry.getValue().clear();
-        }
-
-        for (RenderEntity entity : _entities)
-        {
-            int depth = (int)entity.getDepth() * -1; // * -1 because if the depth is negative it needs to come
-            // later in the list so that it gets drawn last and
-            // will then appear to be on top of other objects
-            if (!_drawOrder.containsKey(depth))
-            {
-                _drawOrder.put(depth, new ArrayList<>());
-            }
-            _drawOrder.get(depth).add(entity);
-        }
+        _drawOrder.update();
     }
 
     // This performs wraparound for an object
@@ -250,6 +405,13 @@ public class Renderer implements MessageHandler {
         else if (x > worldWidth) x = worldStartX;
         if (y + height < worldStartY) y = worldHeight - height;
         else if (y > worldHeight) y = worldStartY;
+        boolean wrapped = x != translation.x() || y != translation.y();
         translation.setXYZ(x, y, 1);
+        // Don't interpolate across the whole world when wrapping around
+        if (wrapped)
+        {
+            actor.savePreviousTranslation();
+            actor.boundsChanged();
+        }
     }
 }
\ No newline at end of file
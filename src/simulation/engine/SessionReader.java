@@ -0,0 +1,319 @@
+package simulation.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads back a log written by SessionRecorder one message at a time.
+ *
+ * Usage:
+ *      SessionReader reader = new SessionReader("session.rec");
+ *      while (reader.next())
+ *      {
+ *          reader.getStep(); reader.getMessageName(); reader.getDoubleData(); ...
+ *      }
+ *
+ * Running it as a program prints a summary of a log:
+ *      java simulation.engine.SessionReader session.rec
+ */
+public class SessionReader {
+    /**
+     * What a recorded message carried along with it
+     */
+    public enum PayloadType
+    {
+        NONE,
+        PRIMITIVE,  // See getDoubleData/getLongData/getIntData
+        STRING,     // See getStringData
+        ENUM,       // See getStringData (enum class name) and getIntData (ordinal)
+        CVAR,       // See getStringData (name) and getCvarValue
+        OBJECT      // See getStringData (class name) - the object itself was not recorded
+    }
+
+    private final ByteBuffer _buffer;
+    private final ArrayList<String> _messageNames = new ArrayList<>();
+    private final ArrayList<String> _strings = new ArrayList<>();
+    private double[] _lastDoubles = new double[64];
+    private long _step = 0;
+    private double _simulatedSeconds = 0.0;
+    private double _lastStepSeconds = 0.0;
+    private int _session = 0;
+
+    // The current message
+    private int _messageId;
+    private PayloadType _payloadType;
+    private double _doubleData;
+    private long _longData;
+    private int _intData;
+    private String _stringData;
+    private String _cvarValue;
+    private long _numBytes; // Recorded - the file is longer (see SessionRecorder)
+
+    /**
+     * @param path log written by SessionRecorder
+     * @throws IOException if the file can't be read or is not a session log
+     */
+    public SessionReader(String path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+        {
+            _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (_buffer.remaining() < 8 || _buffer.getLong() != SessionRecorder.MAGIC)
+        {
+            throw new IOException(path + " is not a session log");
+        }
+        _numBytes = _buffer.limit();
+    }
+
+    /**
+     * Moves on to the next recorded message
+     * @return false once the end of the log has been reached
+     */
+    public boolean next()
+    {
+        while (_buffer.hasRemaining())
+        {
+            byte tag = _buffer.get();
+            switch (tag)
+            {
+                case SessionRecorder.TAG_END:
+                    _numBytes = _buffer.position() - 1;
+                    _buffer.position(_buffer.limit());
+                    return false;
+                case SessionRecorder.TAG_STEP:
+                {
+                    _step += _getVarLong();
+                    double simulatedSeconds = _getXorDouble(_simulatedSeconds + _lastStepSeconds);
+                    _lastStepSeconds = simulatedSeconds - _simulatedSeconds;
+                    _simulatedSeconds = simulatedSeconds;
+                    break;
+                }
+                case SessionRecorder.TAG_DEFINE_MESSAGE:
+                {
+                    int id = (int)_getVarLong();
+                    while (_messageNames.size() <= id) _messageNames.add(null);
+                    _messageNames.set(id, _getString());
+                    break;
+                }
+                case SessionRecorder.TAG_DEFINE_STRING:
+                {
+                    int id = (int)_getVarLong();
+                    while (_strings.size() <= id) _strings.add(null);
+                    _strings.set(id, _getString());
+                    break;
+                }
+                case SessionRecorder.TAG_RESET:
+                    _messageNames.clear();
+                    _strings.clear();
+                    Arrays.fill(_lastDoubles, 0.0);
+                    ++_session;
+                    break;
+                default:
+                    _readMessage(tag);
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of simulation steps taken before the current message's step
+     */
+    public long getStep()
+    {
+        return _step;
+    }
+
+    /**
+     * @return simulated time at the start of the current message's step
+     */
+    public double getSimulatedSeconds()
+    {
+        return _simulatedSeconds;
+    }
+
+    /**
+     * @return how many sessions had been started (at startup and on every reset, warm or
+     *         soft) when the current message was recorded - 1 for the first session
+     */
+    public int getSession()
+    {
+        return _session;
+    }
+
+    public String getMessageName()
+    {
+        return _messageNames.get(_messageId);
+    }
+
+    /**
+     * @return id the message had in the recorded run (only meaningful within one session)
+     */
+    public int getMessageId()
+    {
+        return _messageId;
+    }
+
+    public PayloadType getPayloadType()
+    {
+        return _payloadType;
+    }
+
+    public double getDoubleData()
+    {
+        return _doubleData;
+    }
+
+    public long getLongData()
+    {
+        return _longData;
+    }
+
+    public int getIntData()
+    {
+        return _intData;
+    }
+
+    public String getStringData()
+    {
+        return _stringData;
+    }
+
+    public String getCvarValue()
+    {
+        return _cvarValue;
+    }
+
+    private void _readMessage(byte tag)
+    {
+        _messageId = (int)_getVarLong();
+        _doubleData = 0.0;
+        _longData = 0;
+        _intData = 0;
+        _stringData = null;
+        _cvarValue = null;
+        switch (tag)
+        {
+            case SessionRecorder.TAG_MESSAGE_EMPTY:
+                _payloadType = PayloadType.NONE;
+                break;
+            case SessionRecorder.TAG_MESSAGE_PRIMITIVE:
+            {
+                _payloadType = PayloadType.PRIMITIVE;
+                int control = _buffer.get();
+                if ((control & SessionRecorder.PRIMITIVE_DOUBLE) != 0)
+                {
+                    if (_messageId >= _lastDoubles.length)
+                    {
+                        _lastDoubles = Arrays.copyOf(_lastDoubles, Math.max(_messageId + 1, _lastDoubles.length * 2));
+                    }
+                    _doubleData = _getXorDouble(_lastDoubles[_messageId]);
+                    _lastDoubles[_messageId] = _doubleData;
+                }
+                if ((control & SessionRecorder.PRIMITIVE_LONG) != 0)
+                {
+                    long zigZag = _getVarLong();
+                    _longData = (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+                if ((control & SessionRecorder.PRIMITIVE_INT) != 0)
+                {
+                    long zigZag = _getVarLong();
+                    _intData = (int)((zigZag >>> 1) ^ -(zigZag & 1));
+                }
+                break;
+            }
+            case SessionRecorder.TAG_MESSAGE_STRING:
+                _payloadType = PayloadType.STRING;
+                _stringData = _strings.get((int)_getVarLong());
+                break;
+            case SessionRecorder.TAG_MESSAGE_ENUM:
+                _payloadType = PayloadType.ENUM;
+                _stringData = _strings.get((int)_getVarLong());
+                _intData = (int)_getVarLong();
+                break;
+            case SessionRecorder.TAG_MESSAGE_CVAR:
+                _payloadType = PayloadType.CVAR;
+                _stringData = _strings.get((int)_getVarLong());
+                _cvarValue = _strings.get((int)_getVarLong());
+                break;
+            case SessionRecorder.TAG_MESSAGE_OBJECT:
+                _payloadType = PayloadType.OBJECT;
+                _stringData = _strings.get((int)_getVarLong());
+                break;
+            default:
+                throw new IllegalStateException("Corrupt session log: unknown record " + tag +
+                        " at byte " + (_buffer.position() - 1));
+        }
+    }
+
+    private String _getString()
+    {
+        byte[] bytes = new byte[(int)_getVarLong()];
+        _buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long _getVarLong()
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = _buffer.get();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private double _getXorDouble(double previous)
+    {
+        int control = _buffer.get() & 0xFF;
+        int leading = control >>> 4;
+        int trailing = control & 0xF;
+        long xor = 0;
+        for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8)
+        {
+            xor |= (long)(_buffer.get() & 0xFF) << shift;
+        }
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(previous) ^ xor);
+    }
+
+    /**
+     * Prints the number of steps, messages and bytes in a log along with a
+     * count of each message type
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1)
+        {
+            System.err.println("Usage: java simulation.engine.SessionReader <session log>");
+            return;
+        }
+        SessionReader reader = new SessionReader(args[0]);
+        TreeMap<String, Long> counts = new TreeMap<>();
+        long numMessages = 0;
+        while (reader.next())
+        {
+            ++numMessages;
+            counts.merge(reader.getMessageName(), 1L, Long::sum);
+        }
+        long numBytes = reader._numBytes;
+        System.out.println(args[0] + ": " + numMessages + " messages, " + reader.getStep() + " steps (" +
+                String.format("%.1f", reader.getSimulatedSeconds()) + " simulated seconds), " + numBytes + " bytes");
+        for (Map.Entry<String, Long> entry : counts.entrySet())
+        {
+            System.out.println("    " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package simulation.engine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Writes every message the MessagePump dispatches to a compact binary log so
+ * that a run can be inspected (see SessionReader) or replayed afterwards. It
+ * is turned on by setting eng_record_session to the path of the log.
+ *
+ * The log is a memory-mapped file which is grown in large preallocated chunks
+ * (eng_record_mb), so recording a message is only a handful of writes to memory
+ * and never a system call. Whatever has been recorded is in the OS's page cache
+ * right away, so even a crash leaves a readable log behind - the unused part of
+ * the last chunk reads as the end of the log. The file is never cut down to
+ * what was recorded: Java has no way to unmap it first, and a mapped file can't
+ * be truncated everywhere (Windows refuses), so it stays a whole number of
+ * chunks long with the end marked by close().
+ *
+ * Layout: an 8 byte magic number, then a sequence of records, each starting with
+ * a tag byte:
+ *      STEP            varint steps since the last STEP, simulated time (see below)
+ *      DEFINE_MESSAGE  varint message id, string - first time an id is recorded
+ *      DEFINE_STRING   varint string id, string - first time a string is recorded
+ *      RESET           a new session started (a reset, warm or soft) - ids and strings start over
+ *      MESSAGE_*       varint message id followed by the payload for that kind
+ * Strings are a varint byte count followed by UTF-8. Doubles are stored as the
+ * XOR with the previous double of the same kind (simulated time, or the same
+ * message id): a control byte giving the number of leading and trailing zero
+ * bytes followed by the bytes in between. Values which repeat or change slowly
+ * (step sizes, speeds) therefore take one to a few bytes.
+ *
+ * Only the thread which dispatches messages (the engine's thread) may use it.
+ */
+public class SessionRecorder {
+    static final long MAGIC = 0x4548425245433031L; // "EHBREC01"
+    static final byte TAG_END = 0; // Written by close() - the unused part of the file is zeroed too
+    static final byte TAG_STEP = 1;
+    static final byte TAG_DEFINE_MESSAGE = 2;
+    static final byte TAG_DEFINE_STRING = 3;
+    static final byte TAG_RESET = 4;
+    static final byte TAG_MESSAGE_EMPTY = 16;
+    static final byte TAG_MESSAGE_PRIMITIVE = 17; // Control byte (see PRIMITIVE_*) then the slots it lists
+    static final byte TAG_MESSAGE_STRING = 18;    // varint string id
+    static final byte TAG_MESSAGE_ENUM = 19;      // varint string id of the enum class, varint ordinal
+    static final byte TAG_MESSAGE_CVAR = 20;      // varint string id of the name, varint string id of the value
+    static final byte TAG_MESSAGE_OBJECT = 21;    // varint string id of the class - the object itself is not recorded
+    static final int PRIMITIVE_DOUBLE = 1;
+    static final int PRIMITIVE_LONG = 2;
+    static final int PRIMITIVE_INT = 4;
+    // Largest record other than ones containing strings, which check for themselves
+    private static final int MAX_FIXED_RECORD_BYTES = 64;
+
+    private final Path _path;
+    private final FileChannel _channel;
+    private final long _chunkBytes;
+    private MappedByteBuffer _buffer;
+    private long _bufferStart; // File position of the start of _buffer
+    private boolean _isClosed = false;
+
+    private final HashMap<String, Integer> _stringIds = new HashMap<>();
+    private final HashMap<Class<?>, Integer> _classIds = new HashMap<>();
+    private boolean[] _definedMessages = new boolean[64];
+    private double[] _lastDoubles = new double[64];
+    private long _step = 0;
+    private double _simulatedSeconds = 0.0;
+    private double _lastStepSeconds = 0.0;
+
+    private long _numMessages = 0;
+    private long _numSteps = 0;
+
+    /**
+     * Creates (or replaces) the log and maps its first chunk
+     * @param path file to write the log to
+     * @param chunkBytes bytes preallocated at a time
+     * @throws IOException if the file can't be created or mapped
+     */
+    public SessionRecorder(String path, long chunkBytes) throws IOException
+    {
+        _path = Paths.get(path);
+        _chunkBytes = Math.max(chunkBytes, 4096);
+        _channel = FileChannel.open(_path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        _map(0, _chunkBytes);
+        _buffer.putLong(MAGIC);
+    }
+
+    /**
+     * Called at startup and on every reset (warm or soft) - after a soft reset the
+     * engine uses a new message pump, which may hand out different ids
+     */
+    void beginSession()
+    {
+        _ensure(1);
+        _buffer.put(TAG_RESET);
+        _stringIds.clear();
+        _classIds.clear();
+        Arrays.fill(_definedMessages, false);
+        Arrays.fill(_lastDoubles, 0.0);
+    }
+
+    /**
+     * Marks the start of a simulation step - everything recorded until the next
+     * call belongs to this step
+     * @param step number of steps taken before this one
+     * @param simulatedSeconds simulated time at the start of this step
+     */
+    void beginStep(long step, double simulatedSeconds)
+    {
+        if (step == _step && _numSteps > 0) return; // Already recording this step
+        _ensure(MAX_FIXED_RECORD_BYTES);
+        _buffer.put(TAG_STEP);
+        _putVarLong(step - _step);
+        // The engine adds the same step size every time, so predict that and
+        // only store how far off the prediction was (usually not at all)
+        double predicted = _simulatedSeconds + _lastStepSeconds;
+        _putXorDouble(predicted, simulatedSeconds);
+        _lastStepSeconds = simulatedSeconds - _simulatedSeconds;
+        _step = step;
+        _simulatedSeconds = simulatedSeconds;
+        ++_numSteps;
+    }
+
+    /**
+     * Appends a message that is being dispatched
+     */
+    void record(Message message)
+    {
+        int id = message.getMessageId();
+        if (id >= _definedMessages.length)
+        {
+            int length = Math.max(id + 1, _definedMessages.length * 2);
+            _definedMessages = Arrays.copyOf(_definedMessages, length);
+            _lastDoubles = Arrays.copyOf(_lastDoubles, length);
+        }
+        if (!_definedMessages[id])
+        {
+            _definedMessages[id] = true;
+            byte[] name = message.getMessageName().getBytes(StandardCharsets.UTF_8);
+            _ensure(MAX_FIXED_RECORD_BYTES + name.length);
+            _buffer.put(TAG_DEFINE_MESSAGE);
+            _putVarLong(id);
+            _putBytes(name);
+        }
+        ++_numMessages;
+        Object data = message.getMessageData();
+        if (message.hasPrimitiveData())
+        {
+            _putPrimitive(id, message.getDoubleSlot(), message.getLongSlot(), message.getIntSlot());
+        }
+        else if (data == null)
+        {
+            _ensure(MAX_FIXED_RECORD_BYTES);
+            _buffer.put(TAG_MESSAGE_EMPTY);
+            _putVarLong(id);
+        }
+        else if (data instanceof Double || data instanceof Float)
+        {
+            _putPrimitive(id, ((Number)data).doubleValue(), 0, 0);
+        }
+        else if (data instanceof Long)
+        {
+            _putPrimitive(id, 0.0, (Long)data, 0);
+        }
+        else if (data instanceof Integer || data instanceof Short || data instanceof Byte)
+        {
+            _putPrimitive(id, 0.0, 0, ((Number)data).intValue());
+        }
+        else if (data instanceof String)
+        {
+            int stringId = _stringId((String)data);
+            _ensure(MAX_FIXED_RECORD_BYTES);
+            _buffer.put(TAG_MESSAGE_STRING);
+            _putVarLong(id);
+            _putVarLong(stringId);
+        }
+        else if (data instanceof Enum)
+        {
+            Enum<?> value = (Enum<?>)data;
+            int classId = _classId(value.getDeclaringClass());
+            _ensure(MAX_FIXED_RECORD_BYTES);
+            _buffer.put(TAG_MESSAGE_ENUM);
+            _putVarLong(id);
+            _putVarLong(classId);
+            _putVarLong(value.ordinal());
+        }
+        else if (data instanceof ConsoleVariable)
+        {
+            ConsoleVariable cvar = (ConsoleVariable)data;
+            int nameId = _stringId(cvar.getcvarName());
+            int valueId = _stringId(cvar.getcvarValue());
+            _ensure(MAX_FIXED_RECORD_BYTES);
+            _buffer.put(TAG_MESSAGE_CVAR);
+            _putVarLong(id);
+            _putVarLong(nameId);
+            _putVarLong(valueId);
+        }
+        else
+        {
+            int classId = _classId(data.getClass());
+            _ensure(MAX_FIXED_RECORD_BYTES);
+            _buffer.put(TAG_MESSAGE_OBJECT);
+            _putVarLong(id);
+            _putVarLong(classId);
+        }
+    }
+
+    /**
+     * Marks the end of the log and closes it. Nothing can be recorded afterwards.
+     */
+    public void close()
+    {
+        if (_isClosed) return;
+        _isClosed = true;
+        long length = _bufferStart + _buffer.position();
+        try
+        {
+            _ensure(1);
+            _buffer.put(TAG_END);
+            _buffer.force();
+            _channel.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("WARNING: Unable to finish writing " + _path + " (" + e.getMessage() + ")");
+        }
+        System.out.println("SessionRecorder: wrote " + _numMessages + " messages over " + _numSteps +
+                " steps to " + _path + " (" + length + " bytes)");
+    }
+
+    public long getNumMessages()
+    {
+        return _numMessages;
+    }
+
+    /**
+     * @return bytes recorded so far
+     */
+    public long getNumBytes()
+    {
+        return _bufferStart + _buffer.position();
+    }
+
+    private void _putPrimitive(int id, double doubleData, long longData, int intData)
+    {
+        int control = (Double.doubleToRawLongBits(doubleData) != 0 ? PRIMITIVE_DOUBLE : 0) |
+                (longData != 0 ? PRIMITIVE_LONG : 0) |
+                (intData != 0 ? PRIMITIVE_INT : 0);
+        _ensure(MAX_FIXED_RECORD_BYTES);
+        _buffer.put(TAG_MESSAGE_PRIMITIVE);
+        _putVarLong(id);
+        _buffer.put((byte)control);
+        if ((control & PRIMITIVE_DOUBLE) != 0)
+        {
+            _putXorDouble(_lastDoubles[id], doubleData);
+            _lastDoubles[id] = doubleData;
+        }
+        if ((control & PRIMITIVE_LONG) != 0) _putVarLong((longData << 1) ^ (longData >> 63)); // Zig-zag
+        if ((control & PRIMITIVE_INT) != 0) _putVarLong(((intData << 1) ^ (intData >> 31)) & 0xFFFFFFFFL);
+    }
+
+    // Returns the id of the string, writing it to the log the first time it is seen
+    private int _stringId(String value)
+    {
+        Integer id = _stringIds.get(value);
+        if (id != null) return id;
+        id = _stringIds.size() + _classIds.size();
+        _stringIds.put(value, id);
+        _defineString(id, value);
+        return id;
+    }
+
+    private int _classId(Class<?> c)
+    {
+        Integer id = _classIds.get(c);
+        if (id != null) return id;
+        id = _stringIds.size() + _classIds.size();
+        _classIds.put(c, id);
+        _defineString(id, c.getName());
+        return id;
+    }
+
+    private void _defineString(int id, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        _ensure(MAX_FIXED_RECORD_BYTES + bytes.length);
+        _buffer.put(TAG_DEFINE_STRING);
+        _putVarLong(id);
+        _putBytes(bytes);
+    }
+
+    private void _putBytes(byte[] bytes)
+    {
+        _putVarLong(bytes.length);
+        _buffer.put(bytes);
+    }
+
+    private void _putVarLong(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            _buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        _buffer.put((byte)value);
+    }
+
+    private void _putXorDouble(double previous, double value)
+    {
+        long xor = Double.doubleToRawLongBits(previous) ^ Double.doubleToRawLongBits(value);
+        if (xor == 0)
+        {
+            _buffer.put((byte)0x80); // 8 leading zero bytes, nothing follows
+            return;
+        }
+        int leading = Long.numberOfLeadingZeros(xor) >>> 3;
+        int trailing = Long.numberOfTrailingZeros(xor) >>> 3;
+        _buffer.put((byte)((leading << 4) | trailing));
+        for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8)
+        {
+            _buffer.put((byte)(xor >>> shift));
+        }
+    }
+
+    // Makes sure there are at least numBytes left to write to, mapping the next chunk if not
+    private void _ensure(int numBytes)
+    {
+        if (_buffer.remaining() >= numBytes) return;
+        long position = _bufferStart + _buffer.position();
+        try
+        {
+            _map(position, Math.max(_chunkBytes, numBytes));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("SessionRecorder: unable to grow " + _path, e);
+        }
+    }
+
+    private void _map(long position, long numBytes) throws IOException
+    {
+        _buffer = _channel.map(FileChannel.MapMode.READ_WRITE, position, numBytes);
+        _bufferStart = position;
+    }
+}
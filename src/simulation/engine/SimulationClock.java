@@ -0,0 +1,137 @@
+package simulation.engine;
+
+/**
+ * The simulation clock converts real (wall clock) time into a whole number
+ * of fixed-size simulation steps. Real time is scaled by the time scale and
+ * added to an accumulator, and every time the accumulator holds at least one
+ * fixed step a step is handed out. Whatever is left over is used to interpolate
+ * between the last two simulation states when drawing.
+ *
+ * This means the simulation always advances by exactly the same amount per
+ * step regardless of how fast or slow frames are being drawn, and changing
+ * the time scale only changes how many steps are taken per frame.
+ *
+ * A time scale of zero (or less) means unbounded: the clock hands out no
+ * steps on its own and the owner is expected to step as fast as it can.
+ */
+public class SimulationClock {
+    // Real time longer than this between two calls to advance() is ignored so that
+    // a stall (debugger, window drag) does not trigger thousands of catch-up steps
+    private static final double MAX_FRAME_SECONDS = 0.25;
+
+    private double _fixedStepSeconds;
+    private double _timeScale;
+    private double _accumulatorSeconds = 0.0;
+    private double _simulatedSeconds = 0.0;
+    private long _numSteps = 0;
+    private long _lastTimeNS;
+    private boolean _started = false;
+
+    /**
+     * @param fixedStepSeconds simulated seconds that pass during a single step
+     * @param timeScale simulated seconds per real second (<= 0 means unbounded)
+     */
+    public SimulationClock(double fixedStepSeconds, double timeScale)
+    {
+        setFixedStepSeconds(fixedStepSeconds);
+        setTimeScale(timeScale);
+    }
+
+    /**
+     * Adds the real time that passed since the last call to the accumulator
+     * and removes as many whole steps from it as possible.
+     * @param nowNS current time as given by System.nanoTime()
+     * @return number of steps that should be taken now (always 0 when unbounded)
+     */
+    public int advance(long nowNS)
+    {
+        if (!_started)
+        {
+            _started = true;
+            _lastTimeNS = nowNS;
+            return 0;
+        }
+        double elapsedSeconds = (nowNS - _lastTimeNS) / 1_000_000_000.0;
+        _lastTimeNS = nowNS;
+        if (isUnbounded()) return 0;
+        if (elapsedSeconds > MAX_FRAME_SECONDS) elapsedSeconds = MAX_FRAME_SECONDS;
+        _accumulatorSeconds += elapsedSeconds * _timeScale;
+        int steps = (int)(_accumulatorSeconds / _fixedStepSeconds);
+        _accumulatorSeconds -= steps * _fixedStepSeconds;
+        return steps;
+    }
+
+    /**
+     * Should be called once for every step that was actually taken
+     */
+    public void recordStep()
+    {
+        _simulatedSeconds += _fixedStepSeconds;
+        ++_numSteps;
+    }
+
+    /**
+     * @return how far (0.0 to 1.0) real time has moved past the last step towards
+     *         the next one - 1.0 when unbounded since the latest state is always drawn
+     */
+    public double getInterpolationAlpha()
+    {
+        if (isUnbounded()) return 1.0;
+        return _accumulatorSeconds / _fixedStepSeconds;
+    }
+
+    /**
+     * @return real nanoseconds until the accumulator will hold another step
+     */
+    public long getNanosUntilNextStep()
+    {
+        if (isUnbounded()) return 0;
+        double remainingSeconds = (_fixedStepSeconds - _accumulatorSeconds) / _timeScale;
+        return (long)(remainingSeconds * 1_000_000_000.0);
+    }
+
+    public boolean isUnbounded()
+    {
+        return _timeScale <= 0.0;
+    }
+
+    public void setTimeScale(double timeScale)
+    {
+        _timeScale = timeScale;
+    }
+
+    public double getTimeScale()
+    {
+        return _timeScale;
+    }
+
+    public void setFixedStepSeconds(double fixedStepSeconds)
+    {
+        if (fixedStepSeconds <= 0.0)
+        {
+            throw new IllegalArgumentException("Non-positive step passed into SimulationClock");
+        }
+        _fixedStepSeconds = fixedStepSeconds;
+    }
+
+    public double getFixedStepSeconds()
+    {
+        return _fixedStepSeconds;
+    }
+
+    /**
+     * @return total simulated seconds across all recorded steps
+     */
+    public double getSimulatedSeconds()
+    {
+        return _simulatedSeconds;
+    }
+
+    /**
+     * @return total number of recorded steps
+     */
+    public long getNumSteps()
+    {
+        return _numSteps;
+    }
+}
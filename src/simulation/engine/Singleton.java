@@ -40,7 +40,8 @@ public class Singleton {
     // Removes all currently registered render entities
     public static final String REMOVE_ALL_RENDER_ENTITIES = "remove_all_render_entities";
     // Tells the renderer to register the texture and cache it - the data part
-    // of your message should be a string to a file
+    // of your message should be a string to a file. RenderEntity.setTexture does
+    // this for you.
     public static final String REGISTER_TEXTURE = "register_texture";
     // Sets the main camera of the scene - the data part of the object
     // should be a reference to a Camera object
@@ -48,12 +49,16 @@ public class Singleton {
     // Tells the engine to perform a soft reset (does not reallocate everything,
     // but does call init() for all submodules)
     public static final String PERFORM_SOFT_RESET = "perform_soft_reset";
+    // Tells the engine to perform a warm reset - nothing is torn down or reloaded and
+    // the application puts itself back the way it started (see ApplicationEntryPoint.reset)
+    public static final String PERFORM_WARM_RESET = "perform_warm_reset";
 
     /**
      * The following are console variables that will be registered at startup
      * so you an depend on them being there
      *
-     * To use them, use Singleton.simulation.engine.getConsoleVariables().find(...)
+     * To use them, use Singleton.simulation.engine.getConsoleVariables().find(...), or
+     * findInt/findDouble/findBool for a handle that is cheap to read every frame
      */
     // Represents the title
     public static final String SCR_TITLE = "scr_title";
@@ -71,6 +76,22 @@ public class Singleton {
     // This value can be cast to an int - 60 fps, for example, means the simulation.engine will not
     // update more than 60 times per second
     public static final String ENG_MAX_FPS = "eng_max_fps";
+    // This value can be cast to an int - number of ticks a headless run (see Engine) will
+    // step before shutting down
+    public static final String ENG_HEADLESS_TICKS = "eng_headless_ticks";
+    // This value can be cast to a double - number of fixed simulation steps per simulated second
+    public static final String ENG_PHYSICS_HZ = "eng_physics_hz";
+    // This value can be cast to a double - simulated seconds per real second (1.0 is real time,
+    // 10.0 is ten times faster than real time and 0 means run as fast as possible)
+    public static final String ENG_TIME_SCALE = "eng_time_scale";
+    // Path of the file to record every dispatched message to (see SessionRecorder) - empty
+    // means nothing is recorded
+    public static final String ENG_RECORD_SESSION = "eng_record_session";
+    // This value can be cast to an int - megabytes the session recorder preallocates at a time
+    public static final String ENG_RECORD_MB = "eng_record_mb";
+    // This value can be cast to a boolean - "true" reloads engine.cfg (and any other loaded config
+    // file) whenever it is saved so settings can be tuned without restarting (see ConfigWatcher)
+    public static final String ENG_WATCH_CONFIG = "eng_watch_config";
     // Where the world starts in terms of x and y
     public static final String WORLD_START_X = "world_start_x";
     public static final String WORLD_START_Y = "world_start_y";
@@ -0,0 +1,163 @@
+package simulation.engine;
+
+import java.util.ArrayList;
+
+/**
+ * A uniform grid over world x which lets the renderer find the entities near
+ * the camera without looking at every entity in the world. The world is a long
+ * horizontal strip, so only x is indexed - whatever the grid returns is still
+ * bounds tested by the renderer.
+ *
+ * Each entity is filed under every cell its x extent overlaps. Entities left of
+ * the world's start or right of its end are filed under the first or last cell.
+ * Static actors live in screen space rather than world space and are kept in a
+ * separate list which every query returns.
+ *
+ * Entities report when their location, size or static flag changes (see
+ * RenderEntity) and are re-filed right away if they crossed into other cells.
+ */
+class SpatialIndex {
+    static final double CELL_WIDTH = 256;
+
+    private final double _worldStartX;
+    private final ArrayList<RenderEntity>[] _cells;
+    private final ArrayList<RenderEntity> _staticEntities = new ArrayList<>();
+    private int _queryStamp = 0;
+
+    /**
+     * @param worldStartX where the world starts (x component)
+     * @param worldWidth how long the world is
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic arrays can only be created raw
+    SpatialIndex(double worldStartX, double worldWidth)
+    {
+        _worldStartX = worldStartX;
+        int numCells = Math.max(1, (int)Math.ceil(worldWidth / CELL_WIDTH));
+        _cells = new ArrayList[numCells];
+        for (int i = 0; i < numCells; ++i) _cells[i] = new ArrayList<>();
+    }
+
+    /**
+     * Adds an entity - adding it again does nothing
+     */
+    void add(RenderEntity entity)
+    {
+        if (entity.getSpatialIndex() == this) return;
+        entity.setSpatialIndex(this);
+        _file(entity);
+    }
+
+    void remove(RenderEntity entity)
+    {
+        if (entity.getSpatialIndex() != this) return;
+        _unfile(entity);
+        entity.setSpatialIndex(null);
+    }
+
+    void clear()
+    {
+        for (RenderEntity entity : _staticEntities) entity.setSpatialIndex(null);
+        _staticEntities.clear();
+        for (ArrayList<RenderEntity> cell : _cells)
+        {
+            for (RenderEntity entity : cell) entity.setSpatialIndex(null);
+            cell.clear();
+        }
+    }
+
+    /**
+     * Called when an entity's location, size or static flag changes
+     */
+    void boundsChanged(RenderEntity entity)
+    {
+        boolean isStatic = entity.isStaticActor();
+        if (isStatic == entity.isFiledAsStatic() && (isStatic ||
+                (_firstCell(entity) == entity.getFirstCell() && _lastCell(entity) == entity.getLastCell())))
+        {
+            return; // Still in the same cells
+        }
+        _unfile(entity);
+        _file(entity);
+    }
+
+    /**
+     * Appends every static entity and every entity filed in a cell overlapping
+     * minX to maxX (world coordinates), plus one cell of slack on each side for
+     * things which moved since their last step, to result. Each entity is added
+     * once no matter how many cells it spans.
+     */
+    void query(double minX, double maxX, ArrayList<RenderEntity> result)
+    {
+        int stamp = ++_queryStamp;
+        result.addAll(_staticEntities);
+        int lastCell = _toCell(maxX + CELL_WIDTH);
+        for (int i = _toCell(minX - CELL_WIDTH); i <= lastCell; ++i)
+        {
+            ArrayList<RenderEntity> cell = _cells[i];
+            for (int j = 0; j < cell.size(); ++j)
+            {
+                RenderEntity entity = cell.get(j);
+                if (entity.getQueryStamp() == stamp) continue;
+                entity.setQueryStamp(stamp);
+                result.add(entity);
+            }
+        }
+    }
+
+    private void _file(RenderEntity entity)
+    {
+        if (entity.isStaticActor())
+        {
+            entity.setCells(true, 0, -1);
+            _staticEntities.add(entity);
+            return;
+        }
+        int firstCell = _firstCell(entity);
+        int lastCell = _lastCell(entity);
+        entity.setCells(false, firstCell, lastCell);
+        for (int i = firstCell; i <= lastCell; ++i) _cells[i].add(entity);
+    }
+
+    private void _unfile(RenderEntity entity)
+    {
+        if (entity.isFiledAsStatic())
+        {
+            _removeFrom(_staticEntities, entity);
+            return;
+        }
+        for (int i = entity.getFirstCell(); i <= entity.getLastCell(); ++i) _removeFrom(_cells[i], entity);
+    }
+
+    private static void _removeFrom(ArrayList<RenderEntity> list, RenderEntity entity)
+    {
+        // Order within a cell doesn't matter, so swap the last one into its place
+        for (int i = 0; i < list.size(); ++i)
+        {
+            if (list.get(i) == entity)
+            {
+                int last = list.size() - 1;
+                list.set(i, list.get(last));
+                list.remove(last);
+                return;
+            }
+        }
+    }
+
+    private int _firstCell(RenderEntity entity)
+    {
+        return _toCell(entity.getLocationX());
+    }
+
+    private int _lastCell(RenderEntity entity)
+    {
+        return _toCell(entity.getLocationX() + entity.getWidth());
+    }
+
+    private int _toCell(double x)
+    {
+        double cell = Math.floor((x - _worldStartX) / CELL_WIDTH);
+        if (cell < 0) return 0;
+        if (cell >= _cells.length) return _cells.length - 1;
+        return (int)cell;
+    }
+}
@@ -0,0 +1,308 @@
+package simulation.engine;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Every texture the application uses, each known by an int handle which is
+ * handed out the first time its file is asked for (see getHandle). Entities keep
+ * the handle rather than the file name, so drawing one is a few array reads
+ * instead of a map lookup.
+ *
+ * A texture starts decoding on a pool of worker threads as soon as it is
+ * registered, so everything the application creates during startup is decoded
+ * in parallel while it carries on. At the start of each frame the renderer
+ * picks up whatever has finished (see packPending) and packs the smaller ones
+ * into large shared pages, so an entity is drawn as a region of a page and
+ * consecutive sprites (such as the frames of an animation) are drawn from the
+ * same image. Textures too big to share a page are drawn from their own image.
+ * Until a texture is ready (see isPending) the renderer draws a placeholder.
+ *
+ * Each time every outstanding texture has finished loading a report is printed
+ * with how long each one took to decode and to become ready.
+ *
+ * Handles can be asked for from any thread and are never reused, so they
+ * survive a soft reset along with the loaded images.
+ */
+class TextureAtlas {
+    static final int NO_TEXTURE = -1;
+    static final int PAGE_SIZE = 2048;
+    // Anything wider or taller than this gets its own image
+    private static final int MAX_PACKED_SIZE = PAGE_SIZE / 2;
+    // Transparent border around each packed texture so scaling never samples a neighbor
+    private static final int PADDING = 1;
+    private static final int MAX_LOADER_THREADS = 8;
+
+    /**
+     * A texture which has finished decoding on a worker thread
+     */
+    private static class Decoded
+    {
+        final int handle;
+        final Image image; // Null if it couldn't be loaded
+        final long startNS;
+        final long endNS;
+
+        Decoded(int handle, Image image, long startNS, long endNS)
+        {
+            this.handle = handle;
+            this.image = image;
+            this.startNS = startNS;
+            this.endNS = endNS;
+        }
+    }
+
+    private final boolean _loadImages;
+    private final HashMap<String, Integer> _handles = new HashMap<>();
+    private final ArrayList<String> _names = new ArrayList<>();
+    private final ArrayList<Long> _requestNS = new ArrayList<>(); // When each texture was registered
+    private final ConcurrentLinkedQueue<Decoded> _decoded = new ConcurrentLinkedQueue<>();
+    private ExecutorService _loaders; // Created on first use
+
+    // The following are only used on the renderer's thread
+    private int _numReady = 0; // Textures which have finished loading (or failed to)
+    private boolean[] _isReady = new boolean[64];
+    private Image[] _images = new Image[64]; // Image each handle is drawn from (null if it failed to load)
+    private double[] _regionX = new double[64];
+    private double[] _regionY = new double[64];
+    private double[] _regionWidth = new double[64];
+    private double[] _regionHeight = new double[64];
+    private final ArrayList<WritableImage> _pages = new ArrayList<>();
+    // Shelf packing state for the newest page: textures are placed left to right
+    // along a shelf and a new shelf is started above the tallest one when a row fills up
+    private int _shelfX = 0;
+    private int _shelfY = 0;
+    private int _shelfHeight = 0;
+    // Textures which finished since the last report
+    private final ArrayList<Decoded> _finished = new ArrayList<>();
+
+    /**
+     * @param loadImages false if nothing will be drawn (headless), in which case
+     *                   textures are only given handles and never loaded
+     */
+    TextureAtlas(boolean loadImages)
+    {
+        _loadImages = loadImages;
+    }
+
+    /**
+     * @param texture file to load the texture from
+     * @return the handle for the given texture - the first call for a file registers it
+     */
+    synchronized int getHandle(String texture)
+    {
+        Integer handle = _handles.get(texture);
+        if (handle != null) return handle;
+        handle = _names.size();
+        _names.add(texture);
+        _handles.put(texture, handle);
+        _requestNS.add(System.nanoTime());
+        if (_loadImages) _startLoading(handle, texture);
+        return handle;
+    }
+
+    /**
+     * @return file the handle was registered with
+     */
+    synchronized String getName(int handle)
+    {
+        return _names.get(handle);
+    }
+
+    synchronized int getNumTextures()
+    {
+        return _names.size();
+    }
+
+    /**
+     * Packs every texture which has finished decoding since the last call. Only the
+     * renderer calls this, at the start of each frame.
+     */
+    void packPending()
+    {
+        if (_decoded.isEmpty()) return;
+        int numTextures = getNumTextures();
+        if (numTextures > _images.length)
+        {
+            int length = Math.max(numTextures, _images.length * 2);
+            _isReady = Arrays.copyOf(_isReady, length);
+            _images = Arrays.copyOf(_images, length);
+            _regionX = Arrays.copyOf(_regionX, length);
+            _regionY = Arrays.copyOf(_regionY, length);
+            _regionWidth = Arrays.copyOf(_regionWidth, length);
+            _regionHeight = Arrays.copyOf(_regionHeight, length);
+        }
+        ArrayList<Integer> packed = new ArrayList<>();
+        Decoded decoded;
+        while ((decoded = _decoded.poll()) != null)
+        {
+            int handle = decoded.handle;
+            Image image = decoded.image;
+            _isReady[handle] = true;
+            ++_numReady;
+            _finished.add(decoded);
+            if (image == null) continue;
+            _images[handle] = image;
+            _regionX[handle] = 0;
+            _regionY[handle] = 0;
+            _regionWidth[handle] = image.getWidth();
+            _regionHeight[handle] = image.getHeight();
+            if (image.getWidth() <= MAX_PACKED_SIZE && image.getHeight() <= MAX_PACKED_SIZE &&
+                    image.getPixelReader() != null)
+            {
+                packed.add(handle);
+            }
+        }
+        // Tallest first keeps the shelves full
+        packed.sort((a, b) -> Double.compare(_regionHeight[b], _regionHeight[a]));
+        for (int handle : packed) _pack(handle);
+        if (_numReady == numTextures) _printReport();
+    }
+
+    /**
+     * @return true if the texture has been registered but is not ready to draw yet
+     */
+    boolean isPending(int handle)
+    {
+        return _loadImages && handle >= 0 && (handle >= _isReady.length || !_isReady[handle]);
+    }
+
+    /**
+     * @return image to draw the texture from, or null if there is none (or it is not loaded yet)
+     */
+    Image getImage(int handle)
+    {
+        return handle >= 0 && handle < _images.length ? _images[handle] : null;
+    }
+
+    /*
+     * Region of getImage() holding the texture
+     */
+    double getRegionX(int handle)
+    {
+        return _regionX[handle];
+    }
+
+    double getRegionY(int handle)
+    {
+        return _regionY[handle];
+    }
+
+    double getRegionWidth(int handle)
+    {
+        return _regionWidth[handle];
+    }
+
+    double getRegionHeight(int handle)
+    {
+        return _regionHeight[handle];
+    }
+
+    int getNumPages()
+    {
+        return _pages.size();
+    }
+
+    // Decodes the texture on a worker thread - packPending picks it up once it's done
+    private void _startLoading(int handle, String texture)
+    {
+        if (_loaders == null)
+        {
+            int numThreads = Math.max(1, Math.min(MAX_LOADER_THREADS, Runtime.getRuntime().availableProcessors()));
+            _loaders = Executors.newFixedThreadPool(numThreads, (runnable) -> {
+                Thread thread = new Thread(runnable, "Texture loader");
+                thread.setDaemon(true); // Never keeps the application alive
+                return thread;
+            });
+        }
+        _loaders.execute(() -> {
+            long startNS = System.nanoTime();
+            Image image = _load(texture);
+            _decoded.add(new Decoded(handle, image, startNS, System.nanoTime()));
+        });
+    }
+
+    private static Image _load(String texture)
+    {
+        try
+        {
+            Image image = new Image(texture);
+            if (!image.isError()) return image;
+        }
+        catch (Exception e)
+        {
+            // Reported below
+        }
+        System.err.println("ERROR: Unable to load " + texture);
+        return null;
+    }
+
+    // Lists how long each texture which finished since the last report took, slowest first
+    private void _printReport()
+    {
+        if (_finished.isEmpty()) return;
+        long firstRequestNS = Long.MAX_VALUE;
+        long lastReadyNS = 0;
+        long totalDecodeNS = 0;
+        for (Decoded decoded : _finished)
+        {
+            firstRequestNS = Math.min(firstRequestNS, _getRequestNS(decoded.handle));
+            lastReadyNS = Math.max(lastReadyNS, decoded.endNS);
+            totalDecodeNS += decoded.endNS - decoded.startNS;
+        }
+        _finished.sort((a, b) -> Long.compare(b.endNS - b.startNS, a.endNS - a.startNS));
+        System.out.println(String.format("TextureAtlas: %d textures ready in %.1f ms (%.1f ms of decoding), %d atlas pages",
+                _finished.size(), (lastReadyNS - firstRequestNS) / 1e6, totalDecodeNS / 1e6, _pages.size()));
+        for (Decoded decoded : _finished)
+        {
+            String size = decoded.image == null ? "failed" : (int)decoded.image.getWidth() + "x" + (int)decoded.image.getHeight();
+            System.out.println(String.format("    %7.1f ms decode, %7.1f ms until ready  %s (%s)",
+                    (decoded.endNS - decoded.startNS) / 1e6, (decoded.endNS - _getRequestNS(decoded.handle)) / 1e6,
+                    getName(decoded.handle), size));
+        }
+        _finished.clear();
+    }
+
+    private synchronized long _getRequestNS(int handle)
+    {
+        return _requestNS.get(handle);
+    }
+
+    // Copies the texture into the newest page, starting a new shelf or page if it won't fit
+    private void _pack(int handle)
+    {
+        Image image = _images[handle];
+        int width = (int)image.getWidth();
+        int height = (int)image.getHeight();
+        if (_pages.isEmpty() || _shelfX + width + PADDING > PAGE_SIZE)
+        {
+            // Next shelf
+            _shelfX = 0;
+            _shelfY += _shelfHeight;
+            _shelfHeight = 0;
+        }
+        if (_pages.isEmpty() || _shelfY + height + PADDING > PAGE_SIZE)
+        {
+            _pages.add(new WritableImage(PAGE_SIZE, PAGE_SIZE));
+            _shelfX = 0;
+            _shelfY = 0;
+            _shelfHeight = 0;
+        }
+        WritableImage page = _pages.get(_pages.size() - 1);
+        PixelReader reader = image.getPixelReader();
+        page.getPixelWriter().setPixels(_shelfX, _shelfY, width, height, reader, 0, 0);
+        _images[handle] = page;
+        _regionX[handle] = _shelfX;
+        _regionY[handle] = _shelfY;
+        _shelfX += width + PADDING;
+        _shelfHeight = Math.max(_shelfHeight, height + PADDING);
+    }
+}